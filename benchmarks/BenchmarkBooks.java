@@ -0,0 +1,90 @@
+package com.ucas.addressbook.benchmarks;
+
+import com.ucas.addressbook.ColumnarContactManager;
+import com.ucas.addressbook.Contact;
+import com.ucas.addressbook.ContactManager;
+import com.ucas.addressbook.ImportRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Address books for the benchmarks, the same for a given size and name
+// distribution on every run:
+//   uniform  first and last name picked uniformly, so each name repeats
+//   skewed   a few very common first names, like real address books
+//   unique   a distinct third word per contact, no two names alike
+// Contact i has number 059 followed by i in 7 digits, so books go up to 10M.
+final class BenchmarkBooks {
+    static final String[] FIRST_NAMES = {
+        "Mohamed", "Muhammad", "Ahmed", "Ali", "Omar", "Khaled", "Youssef", "Ibrahim", "Hassan", "Mahmoud",
+        "Fatima", "Aisha", "Mariam", "Sara", "Noor", "Layla", "Huda", "Amal", "Rana", "Dina",
+        "John", "Michael", "David", "James", "Robert", "Mary", "Linda", "Susan", "Karen", "Emily"
+    };
+    static final String[] LAST_NAMES = {
+        "Saleh", "Abu Shawish", "Haddad", "Khalil", "Nasser", "Mansour", "Awad", "Hamdan", "Odeh", "Zaki",
+        "Smith", "Johnson", "Brown", "Taylor", "Wilson", "Davies", "Evans", "Thomas", "Roberts", "Walker"
+    };
+    private static final String[] TYPES = { "Family", "Personal", "Work", "Other" };
+    private static final long SEED = 20260205L;
+    
+    private BenchmarkBooks() {
+    }
+    
+    static ContactManager load(String store, int size, String names) {
+        ContactManager manager = switch (store) {
+            case "indexed" -> new ContactManager();
+            case "columnar" -> new ColumnarContactManager();
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        };
+        manager.importContacts(records(size, names), false);
+        return manager;
+    }
+    
+    // For SearchEngine, which works on a plain list
+    static List<Contact> contacts(int size, String names) {
+        List<Contact> contacts = new ArrayList<>(size);
+        records(size, names).forEach(record ->
+            contacts.add(new Contact(record.getName(), record.getType(), record.getPhoneNumber())));
+        return contacts;
+    }
+    
+    static Stream<ImportRecord> records(int size, String names) {
+        return IntStream.range(0, size).mapToObj(i -> new ImportRecord(i + 1, name(i, names), TYPES[i % TYPES.length], number(i)));
+    }
+    
+    static String name(int i, String names) {
+        // Seeded per contact so any one name is computed without the ones before it
+        Random random = new Random(SEED + i);
+        String first = switch (names) {
+            case "uniform", "unique" -> FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            // Cubing a uniform draw piles most picks on the first few names
+            case "skewed" -> FIRST_NAMES[(int) (FIRST_NAMES.length * Math.pow(random.nextDouble(), 3))];
+            default -> throw new IllegalArgumentException("Unknown name distribution: " + names);
+        };
+        String name = first + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        return names.equals("unique") ? name + " " + letters(i) : name;
+    }
+    
+    static String number(int i) {
+        return String.format("059%07d", i);
+    }
+    
+    // Same name with one letter dropped, for fuzzy searches
+    static String misspell(String name) {
+        int at = Math.min(2, name.length() - 1);
+        return name.substring(0, at) + name.substring(at + 1);
+    }
+    
+    // 0 -> "a", 25 -> "z", 26 -> "ba"
+    private static String letters(int i) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return sb.reverse().toString();
+    }
+}
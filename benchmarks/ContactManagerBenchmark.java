@@ -0,0 +1,154 @@
+package com.ucas.addressbook.benchmarks;
+
+import com.ucas.addressbook.Contact;
+import com.ucas.addressbook.ContactManager;
+import com.ucas.addressbook.OperationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ContactManager operations over book sizes, name distributions and both
+// stores. Searches run against one book per trial; adds and deletes get a
+// fresh book every iteration and are timed over a batch of BATCH edits, which
+// changes even the smallest book by no more than 5%. deleteByName only runs on
+// unique names, so every call deletes exactly one contact. The 10M books need
+// a large heap for the indexed store (run with -jvmArgsAppend -Xmx24g), or
+// pick sizes with -p bookSize=1000,100000.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContactManagerBenchmark {
+    // Edits per measured iteration of the add and delete benchmarks, 5% of the
+    // smallest book; more iterations make up for the short batches
+    private static final int BATCH = 50;
+    
+    @State(Scope.Benchmark)
+    public static class Book {
+        @Param({ "1000", "100000", "1000000", "10000000" })
+        int bookSize;
+        @Param({ "uniform", "skewed", "unique" })
+        String names;
+        @Param({ "indexed", "columnar" })
+        String store;
+        
+        ContactManager manager;
+        String presentName;
+        String misspelledName;
+        String presentNumber;
+        
+        @Setup(Level.Trial)
+        public void load() {
+            manager = BenchmarkBooks.load(store, bookSize, names);
+            presentName = BenchmarkBooks.name(bookSize / 2, names);
+            misspelledName = BenchmarkBooks.misspell(presentName);
+            presentNumber = BenchmarkBooks.number(bookSize / 3);
+        }
+    }
+    
+    // Rebuilt before every iteration so the edits of one do not pile up
+    @State(Scope.Benchmark)
+    public static class EditedBook {
+        @Param({ "1000", "100000", "1000000", "10000000" })
+        int bookSize;
+        @Param({ "uniform", "skewed", "unique" })
+        String names;
+        @Param({ "indexed", "columnar" })
+        String store;
+        
+        ContactManager manager;
+        int next;
+        
+        @Setup(Level.Iteration)
+        public void load() {
+            manager = BenchmarkBooks.load(store, bookSize, names);
+            next = 0;
+        }
+        
+        int nextIndex() {
+            return spread(next++, bookSize);
+        }
+    }
+    
+    // Like EditedBook with unique names only. With repeating names the first
+    // deleteByName of a name removes all its contacts and later ones find none.
+    @State(Scope.Benchmark)
+    public static class UniqueNamesBook {
+        @Param({ "1000", "100000", "1000000", "10000000" })
+        int bookSize;
+        @Param({ "indexed", "columnar" })
+        String store;
+        
+        ContactManager manager;
+        int next;
+        
+        @Setup(Level.Iteration)
+        public void load() {
+            manager = BenchmarkBooks.load(store, bookSize, "unique");
+            next = 0;
+        }
+        
+        int nextIndex() {
+            return spread(next++, bookSize);
+        }
+    }
+    
+    // Distinct contacts spread over the book, 7919 being a prime
+    private static int spread(int edit, int bookSize) {
+        return (int) ((long) edit * 7919 % bookSize);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByNameExact(Book book) {
+        return book.manager.searchByName(book.presentName, false);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByNameFuzzy(Book book) {
+        return book.manager.searchByName(book.misspelledName, true);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByNumber(Book book) {
+        return book.manager.searchByNumber(book.presentNumber);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public OperationResult addContact(EditedBook book) {
+        int i = book.bookSize + book.next++;
+        // Numbers past the book's own, 056 instead of 059
+        return book.manager.tryAddContact(BenchmarkBooks.name(i, book.names), "Work", String.format("056%07d", i), false);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public int deleteByName(UniqueNamesBook book) {
+        return book.manager.deleteByName(BenchmarkBooks.name(book.nextIndex(), "unique"));
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public boolean deleteByNumber(EditedBook book) {
+        return book.manager.deleteByNumber(BenchmarkBooks.number(book.nextIndex()));
+    }
+}
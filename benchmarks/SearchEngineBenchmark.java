@@ -0,0 +1,90 @@
+package com.ucas.addressbook.benchmarks;
+
+import com.ucas.addressbook.Contact;
+import com.ucas.addressbook.ContactQuery;
+import com.ucas.addressbook.ContactType;
+import com.ucas.addressbook.SearchEngine;
+import com.ucas.addressbook.VariationDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Every SearchEngine method over plain contact lists. These are linear scans,
+// so the interesting number is time per contact as the list grows, and how
+// much the parallel mode cuts it on a machine with several cores. 10M
+// contacts need -jvmArgsAppend -Xmx16g.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchEngineBenchmark {
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    int bookSize;
+    @Param({ "uniform", "skewed", "unique" })
+    String names;
+    // parallel splits lists from SearchEngine.DEFAULT_PARALLEL_THRESHOLD up on the common pool
+    @Param({ "sequential", "parallel" })
+    String mode;
+    
+    private SearchEngine engine;
+    private List<Contact> contacts;
+    private String presentName;
+    private String misspelledName;
+    private String presentNumber;
+    private ContactQuery query;
+    
+    @Setup(Level.Trial)
+    public void load() {
+        engine = switch (mode) {
+            case "sequential" -> new SearchEngine();
+            case "parallel" -> new SearchEngine(VariationDictionary.getDefault(), ForkJoinPool.commonPool(),
+                SearchEngine.DEFAULT_PARALLEL_THRESHOLD);
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        };
+        contacts = BenchmarkBooks.contacts(bookSize, names);
+        presentName = BenchmarkBooks.name(bookSize / 2, names);
+        misspelledName = BenchmarkBooks.misspell(presentName);
+        presentNumber = BenchmarkBooks.number(bookSize / 3);
+        query = ContactQuery.type(ContactType.FAMILY).and(ContactQuery.nameContains(presentName)).limit(20);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByNameContains() {
+        return engine.searchByNameContains(contacts, presentName);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByNameFuzzy() {
+        return engine.searchByNameFuzzy(contacts, misspelledName);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByNumberExact() {
+        return engine.searchByNumberExact(contacts, presentNumber);
+    }
+    
+    @Benchmark
+    public List<Contact> searchByType() {
+        return engine.searchByType(contacts, "Family");
+    }
+    
+    @Benchmark
+    public List<Contact> search() {
+        return engine.search(contacts, query);
+    }
+}
@@ -2,8 +2,24 @@
 
 package com.ucas.addressbook;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import javax.management.JMException;
+
 public class AddressBookSystem {
-    private static ContactManager contactManager = new ContactManager();
+    private static final String DATA_DIRECTORY = "addressbook-data";
+    // Name searches show only the best matches
+    private static final int MAX_NAME_RESULTS = 10;
+    // Contacts listed before asking whether to show more
+    private static final int PAGE_SIZE = 20;
+    // Calls at least this slow are written to the slow query log
+    private static final Duration SLOW_QUERY_THRESHOLD = Duration.ofMillis(100);
+    // Latency and call counts of every operation, also published over JMX
+    private static ContactMetrics metrics = registerMetrics();
+    private static SlowQueryLog slowQueries = openSlowQueryLog();
+    private static ContactManager contactManager = new InstrumentedContactManager(openContactManager(), metrics, slowQueries);
     private static MenuInterface menu = new MenuInterface();
 
     public static void main(String[] args) {
@@ -11,6 +27,7 @@ public class AddressBookSystem {
         System.out.println("        WELCOME TO ADDRESS BOOK SYSTEM");
         System.out.println("        University College of Applied Sciences");
         System.out.println("=".repeat(60));
+        checkNameVariations();
 
         boolean running = true;
         while (running) {
@@ -24,14 +41,60 @@ public class AddressBookSystem {
                 case 4 -> deleteByName();
                 case 5 -> deleteByNumber();
                 case 6 -> displayAllContacts();
-                case 7 -> { running = false; System.out.println("\nThank you for using Address Book System!"); System.out.println("Goodbye! 👋"); }
-                default -> System.out.println("Invalid choice! Please enter 1-7.");
+                case 7 -> { running = false; saveContacts(); System.out.println("\nThank you for using Address Book System!"); System.out.println("Goodbye! 👋"); }
+                case 8 -> showStatistics();
+                default -> System.out.println("Invalid choice! Please enter 1-8.");
             }
 
             if (running && choice != 7) { menu.pressEnterToContinue(); }
         }
     }
 
+    private static ContactManager openContactManager() {
+        try {
+            return new ContactManager(Paths.get(DATA_DIRECTORY));
+        } catch (IOException e) {
+            System.out.println("Warning: could not load saved contacts (" + e.getMessage() + "). Changes will not be saved.");
+            return new ContactManager();
+        }
+    }
+
+    // Next to the saved contacts; without it only the metrics are kept
+    private static SlowQueryLog openSlowQueryLog() {
+        try {
+            Files.createDirectories(Paths.get(DATA_DIRECTORY));
+            return new SlowQueryLog(Paths.get(DATA_DIRECTORY, "slow-queries.log"), SLOW_QUERY_THRESHOLD);
+        } catch (IOException e) {
+            System.out.println("Warning: could not open the slow query log (" + e.getMessage() + ").");
+            return null;
+        }
+    }
+
+    private static ContactMetrics registerMetrics() {
+        ContactMetrics metrics = new ContactMetrics();
+        try {
+            metrics.register("AddressBookSystem");
+        } catch (JMException e) {
+            System.out.println("Warning: performance statistics are not available over JMX (" + e.getMessage() + ").");
+        }
+        return metrics;
+    }
+
+    private static void saveContacts() {
+        try { contactManager.close(); }
+        catch (IOException e) { System.out.println("Warning: could not save contacts: " + e.getMessage()); }
+        try { if (slowQueries != null) { slowQueries.close(); } }
+        catch (IOException e) { System.out.println("Warning: could not write the slow query log: " + e.getMessage()); }
+    }
+
+    private static void checkNameVariations() {
+        IOException failure = VariationDictionary.getLoadFailure();
+        if (failure != null) {
+            System.out.println("Warning: could not load name variations from "
+                + System.getProperty(VariationDictionary.FILE_PROPERTY) + " (" + failure.getMessage() + ").");
+        }
+    }
+
     private static void addNewContact() {
         System.out.println("\n" + "─".repeat(40));
         System.out.println("        ADD NEW CONTACT");
@@ -42,8 +105,7 @@ public class AddressBookSystem {
         String phone = menu.getPhoneNumber();
         boolean addMoreNumbers = menu.askYesNo("Do you want to add another number for this contact? (yes/no): ");
 
-        if (contactManager.addContact(name, type, phone, addMoreNumbers)) { System.out.println("✅ Contact added successfully!"); }
-        else { System.out.println(" Failed to add contact. Please check your input."); }
+        menu.displayResult(contactManager.tryAddContact(name, type, phone, addMoreNumbers));
     }
 
     private static void searchByName() {
@@ -53,8 +115,12 @@ public class AddressBookSystem {
 
         String name = menu.getInput("Enter name to search: ");
         boolean useFuzzy = menu.askYesNo("Use similar name search? (yes/no): ");
-        var results = contactManager.searchByName(name, useFuzzy);
+        var hits = contactManager.searchRanked(name, useFuzzy, MAX_NAME_RESULTS);
+        var results = hits.stream().map(SearchHit::getContact).toList();
         menu.displaySearchResults(results, "name", name);
+        if (hits.size() == MAX_NAME_RESULTS) {
+            System.out.println("Showing the best " + MAX_NAME_RESULTS + " matches, type more of the name to narrow it down.");
+        }
     }
 
     private static void searchByNumber() {
@@ -96,8 +162,27 @@ public class AddressBookSystem {
         System.out.println("        ALL CONTACTS");
         System.out.println("─".repeat(40));
 
-        var allContacts = contactManager.getAllContacts();
-        if (allContacts.isEmpty()) { System.out.println("No contacts stored yet."); }
-        else { System.out.println("Total contacts: " + allContacts.size()); menu.displayAllContacts(allContacts); }
+        int total = contactManager.getContactCount();
+        if (total == 0) { System.out.println("No contacts stored yet."); return; }
+        System.out.println("Total contacts: " + total);
+
+        // One page at a time, so a large book is neither copied nor flooded onto the console
+        ContactPage page = contactManager.getContactsPage(null, PAGE_SIZE);
+        menu.displayAllContacts(page.getContacts());
+        while (page.hasNext() && menu.askYesNo("Show the next " + PAGE_SIZE + " contacts? (yes/no): ")) {
+            page = contactManager.getContactsPage(page.getNextPageToken(), PAGE_SIZE);
+            menu.displayAllContacts(page.getContacts());
+        }
+    }
+
+    private static void showStatistics() {
+        System.out.println("\n" + "─".repeat(40));
+        System.out.println("        PERFORMANCE STATISTICS");
+        System.out.println("─".repeat(40));
+
+        // Only the header line until something has been called
+        String report = metrics.getReport();
+        if (report.lines().count() == 1) { System.out.println("No operations recorded yet."); return; }
+        System.out.print(report);
     }
 }
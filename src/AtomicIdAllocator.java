@@ -0,0 +1,40 @@
+package com.ucas.addressbook;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Thread-safe counter, the default IdAllocator
+public class AtomicIdAllocator implements IdAllocator {
+    private final AtomicInteger last;
+    
+    public AtomicIdAllocator() {
+        this(0);
+    }
+    
+    // Starts after highWaterMark, e.g. the mark saved with a snapshot
+    public AtomicIdAllocator(int highWaterMark) {
+        this.last = new AtomicInteger(highWaterMark);
+    }
+    
+    @Override
+    public int nextId() {
+        return last.incrementAndGet();
+    }
+    
+    @Override
+    public int reserve(int count) {
+        return last.getAndAdd(count) + 1;
+    }
+    
+    @Override
+    public void advancePast(int usedId) {
+        // Plain read first, restoring saved contacts rarely moves the mark
+        if (usedId > last.get()) {
+            last.accumulateAndGet(usedId, Math::max);
+        }
+    }
+    
+    @Override
+    public int highWaterMark() {
+        return last.get();
+    }
+}
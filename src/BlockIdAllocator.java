@@ -0,0 +1,49 @@
+package com.ucas.addressbook;
+
+// Hands out ids from blocks reserved on a shared allocator, so a bulk import
+// touches the shared counter once per block instead of once per contact.
+// Not thread-safe: use one instance per importing thread.
+public class BlockIdAllocator implements IdAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    
+    private final IdAllocator source;
+    private final int blockSize;
+    private int next;
+    private int end;
+    
+    public BlockIdAllocator(IdAllocator source) {
+        this(source, DEFAULT_BLOCK_SIZE);
+    }
+    
+    public BlockIdAllocator(IdAllocator source, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.source = source;
+        this.blockSize = blockSize;
+    }
+    
+    @Override
+    public int nextId() {
+        if (next == end) {
+            next = source.reserve(blockSize);
+            end = next + blockSize;
+        }
+        return next++;
+    }
+    
+    @Override
+    public int reserve(int count) {
+        return source.reserve(count);
+    }
+    
+    @Override
+    public void advancePast(int usedId) {
+        source.advancePast(usedId);
+    }
+    
+    @Override
+    public int highWaterMark() {
+        return source.highWaterMark();
+    }
+}
@@ -0,0 +1,477 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// In-memory ContactManager for address books with millions of contacts.
+//
+// Contacts live in ContactColumns instead of as Contact objects with trigram,
+// BK-tree and variation indexes on top, which cuts the heap per contact
+// several times. Lookups by number and exact name are still hash lookups;
+// name searches scan the name arena instead.
+//
+// Returned contacts are views built from a row on demand. Edits made on a view
+// are written back to the columns, but a view does not see edits made after
+// it was built. Not thread-safe and not persistent.
+public class ColumnarContactManager extends ContactManager {
+    private static final int DEFAULT_FUZZY_DISTANCE = 2;
+    
+    private final ContactColumns columns = new ContactColumns();
+    private final ValidationUtils validator = new ValidationUtils();
+    private final VariationDictionary dictionary = VariationDictionary.getDefault();
+    private final ContactListener writeBack = new WriteBack();
+    private final ContactIndexes queryIndexes = new ColumnIndexes();
+    
+    // Contacts live in the columns, ContactManager's own indexes are never built
+    public ColumnarContactManager() {
+        super((IndexedContacts) null);
+    }
+    
+    @Override
+    OperationResult addValidContact(String name, ContactType type, long numberKey, boolean allowMultipleNumbers) {
+        if (columns.rowOfNumber(numberKey) != ContactColumns.NONE) {
+            return OperationResult.NUMBER_EXISTS;
+        }
+        
+        // Same-name rows only matter when merging
+        int existing = allowMultipleNumbers ? columns.firstRowOfName(name) : ContactColumns.NONE;
+        if (existing != ContactColumns.NONE) {
+            columns.addNumber(existing, numberKey);
+            return OperationResult.numberAdded(view(existing));
+        }
+        
+        int row = columns.add(Contact.getIdAllocator().nextId(), name, type, numberKey);
+        return OperationResult.contactAdded(view(row));
+    }
+    
+    // Same rules and report as ContactManager.importContacts, written straight
+    // into the columns without building a Contact per row
+    @Override
+    public ImportReport importContacts(Stream<ImportRecord> records, boolean mergeSameName) {
+        ImportReport report = new ImportReport();
+        
+        Iterator<ImportRecord> rows = records.iterator();
+        List<ImportRecord> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        while (rows.hasNext()) {
+            chunk.add(rows.next());
+            if (chunk.size() == IMPORT_CHUNK_SIZE || !rows.hasNext()) {
+                importChunk(chunk, mergeSameName, report);
+                chunk.clear();
+            }
+        }
+        
+        return report;
+    }
+    
+    private void importChunk(List<ImportRecord> chunk, boolean mergeSameName, ImportReport report) {
+        BlockIdAllocator ids = importIds(chunk.size());
+        for (ImportRecord record : chunk) {
+            PhoneCheck phone = validator.checkPhone(record.getPhoneNumber());
+            OperationResult invalid = firstFailure(record.getName(), record.getType(), phone);
+            if (invalid != null) {
+                report.reject(record, invalid);
+                continue;
+            }
+            
+            long number = phone.getCanonical();
+            if (columns.rowOfNumber(number) != ContactColumns.NONE) {
+                report.reject(record, OperationResult.NUMBER_EXISTS);
+                continue;
+            }
+            
+            int existing = mergeSameName ? columns.firstRowOfName(record.getName()) : ContactColumns.NONE;
+            if (existing != ContactColumns.NONE) {
+                columns.addNumber(existing, number);
+                report.numberMerged();
+            } else {
+                columns.add(ids.nextId(), record.getName(), ContactType.standardize(record.getType()), number);
+                report.contactAdded();
+            }
+        }
+    }
+    
+    // Same order as ContactManager: contains hits, then spelling variations,
+    // then closest spellings
+    @Override
+    public List<Contact> searchByName(String name, boolean useFuzzy) {
+        BitSet seen = containsRows(name, columns.rows());
+        List<Contact> results = viewsById(seen);
+        
+        if (useFuzzy) {
+            BitSet variations = variationRows(name);
+            variations.andNot(seen);
+            seen.or(variations);
+            results.addAll(viewsById(variations));
+            
+            for (int row : fuzzyRows(name, DEFAULT_FUZZY_DISTANCE)) {
+                if (!seen.get(row)) {
+                    results.add(view(row));
+                }
+            }
+        }
+        
+        return results;
+    }
+    
+    // Same ranking as ContactManager; views are only built for the kept hits
+    @Override
+    public List<SearchHit> searchRanked(String name, boolean useFuzzy, int limit) {
+        TopHits top = new TopHits(limit);
+        String query = NGramIndex.normalize(name);
+        BitSet seen = new BitSet();
+        for (int row : columns.rowsOfName(name)) {
+            seen.set(row);
+            top.offer(columns.id(row), SearchHit.Match.EXACT, 0);
+        }
+        
+        if (!top.isClosedTo(SearchHit.Match.PREFIX)) {
+            BitSet contains = containsRows(name, columns.rows());
+            contains.andNot(seen);
+            seen.or(contains);
+            for (int row = contains.nextSetBit(0); row >= 0; row = contains.nextSetBit(row + 1)) {
+                top.offer(columns.id(row), SearchHit.classify(NGramIndex.normalize(columns.name(row)), query), 0);
+            }
+        }
+        if (useFuzzy && !top.isClosedTo(SearchHit.Match.VARIATION)) {
+            BitSet variations = variationRows(name);
+            variations.andNot(seen);
+            seen.or(variations);
+            for (int row = variations.nextSetBit(0); row >= 0; row = variations.nextSetBit(row + 1)) {
+                top.offer(columns.id(row), SearchHit.Match.VARIATION, 0);
+            }
+        }
+        if (useFuzzy && !top.isClosedTo(SearchHit.Match.FUZZY)) {
+            for (long match : fuzzyMatches(name, DEFAULT_FUZZY_DISTANCE)) {
+                if (!seen.get(columns.rowOfId((int) match))) {
+                    top.offer((int) match, SearchHit.Match.FUZZY, (int) (match >>> 32));
+                }
+            }
+        }
+        
+        return top.toList(id -> view(columns.rowOfId(id)));
+    }
+    
+    @Override
+    public List<Contact> searchByNameFuzzy(String name, int maxDistance) {
+        List<Contact> results = new ArrayList<>();
+        for (int row : fuzzyRows(name, maxDistance)) {
+            results.add(view(row));
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByType(ContactType type) {
+        return viewsById(columns.rowsOfType(type));
+    }
+    
+    // Only rows in the type's bitmap are scanned
+    @Override
+    public List<Contact> searchByNameAndType(String name, ContactType type) {
+        return viewsById(containsRows(name, columns.rowsOfType(type)));
+    }
+    
+    @Override
+    public List<Contact> search(ContactQuery query) {
+        return QueryPlanner.run(query, queryIndexes);
+    }
+    
+    @Override
+    QueryPlanner.Plan explain(ContactQuery query) {
+        return QueryPlanner.explain(query, queryIndexes);
+    }
+    
+    @Override
+    public List<Contact> searchByNumber(String number) {
+        int row = columns.rowOfNumber(PhoneNumbers.canonical(number));
+        return row == ContactColumns.NONE ? new ArrayList<>() : new ArrayList<>(List.of(view(row)));
+    }
+    
+    @Override
+    public List<Contact> searchByNumberPrefix(String prefix) {
+        return viewsById(rowsWithPrefix(PhoneNumbers.digitsOf(prefix == null ? "" : prefix)));
+    }
+    
+    @Override
+    public List<Contact> searchByNumberSuffix(String suffix) {
+        return viewsById(rowsWithSuffix(PhoneNumbers.digitsOf(suffix == null ? "" : suffix)));
+    }
+    
+    @Override
+    public int deleteByName(String name) {
+        int[] matches = columns.rowsOfName(name);
+        for (int row : matches) {
+            columns.delete(row);
+        }
+        columns.compactIfSparse();
+        return matches.length;
+    }
+    
+    @Override
+    public boolean deleteByNumber(String number) {
+        long key = PhoneNumbers.canonical(number);
+        int row = columns.rowOfNumber(key);
+        if (row == ContactColumns.NONE) {
+            return false;
+        }
+        
+        if (columns.numberCount(row) > 1) {
+            columns.removeNumber(row, key);
+        } else {
+            columns.delete(row);
+        }
+        columns.compactIfSparse();
+        return true;
+    }
+    
+    // In insertion order, like ContactManager
+    @Override
+    public List<Contact> getAllContacts() {
+        List<Contact> results = new ArrayList<>(columns.size());
+        for (int row = columns.nextRow(0); row != ContactColumns.NONE; row = columns.nextRow(row + 1)) {
+            results.add(view(row));
+        }
+        return results;
+    }
+    
+    @Override
+    public ContactPage getContactsPage(String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        List<Contact> page = new ArrayList<>(Math.min(pageSize, columns.size()));
+        int row = columns.rowFromId(ContactPage.startId(pageToken));
+        for (; row != ContactColumns.NONE && page.size() < pageSize; row = columns.nextRow(row + 1)) {
+            page.add(view(row));
+        }
+        return new ContactPage(page, row == ContactColumns.NONE ? null : ContactPage.token(columns.id(row)));
+    }
+    
+    @Override
+    public int getContactCount() {
+        return columns.size();
+    }
+    
+    @Override
+    public void clearAllContacts() {
+        columns.clear();
+    }
+    
+    private Contact view(int row) {
+        Contact contact = new Contact(columns.id(row), columns.name(row), columns.type(row), columns.numbers(row));
+        contact.setListener(writeBack);
+        return contact;
+    }
+    
+    // ContactManager's search results are ordered by id, rows are in insertion order
+    private List<Contact> viewsById(BitSet rows) {
+        List<Contact> results = new ArrayList<>(rows.cardinality());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            results.add(view(row));
+        }
+        results.sort(Comparator.comparingInt(Contact::getId));
+        return results;
+    }
+    
+    // Candidate rows whose name contains the term
+    private BitSet containsRows(String term, BitSet rows) {
+        char[] query = ContactColumns.fold(term);
+        BitSet matches = new BitSet();
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (columns.nameContains(row, query)) {
+                matches.set(row);
+            }
+        }
+        return matches;
+    }
+    
+    private BitSet rowsWithPrefix(String digits) {
+        BitSet matches = new BitSet();
+        columns.numberPrefixes().forEachWithPrefix(digits, number -> matches.set(columns.rowOfNumber(number)));
+        return matches;
+    }
+    
+    private BitSet rowsWithSuffix(String digits) {
+        BitSet matches = new BitSet();
+        columns.numberPrefixes().forEachWithSuffix(digits, number -> matches.set(columns.rowOfNumber(number)));
+        return matches;
+    }
+    
+    // Rows with a word spelled like any variant of the query's words. The
+    // spellings are listed once, then compared in the name arena.
+    private BitSet variationRows(String name) {
+        BitSet matches = new BitSet();
+        Set<String> keys = dictionary.canonicalKeys(name);
+        if (keys.isEmpty()) {
+            return matches;
+        }
+        char[][] spellings = dictionary.variantsOf(keys).stream().map(ContactColumns::fold).toArray(char[][]::new);
+        for (int row = columns.nextRow(0); row != ContactColumns.NONE; row = columns.nextRow(row + 1)) {
+            if (columns.hasWord(row, spellings)) {
+                matches.set(row);
+            }
+        }
+        return matches;
+    }
+    
+    // Rows where every query word is within the allowed edits of a name word,
+    // by total distance and then id, like FuzzyNameIndex.search
+    private int[] fuzzyRows(String name, int maxDistance) {
+        long[] matches = fuzzyMatches(name, maxDistance);
+        Arrays.sort(matches);
+        int[] rows = new int[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            rows[i] = columns.rowOfId((int) matches[i]);
+        }
+        return rows;
+    }
+    
+    // Total distance in the high half, id in the low half, unsorted
+    private long[] fuzzyMatches(String name, int maxDistance) {
+        String[] queryWords = FuzzyNameIndex.words(NGramIndex.normalize(name)).toArray(new String[0]);
+        if (queryWords.length == 0) {
+            return new long[0];
+        }
+        
+        long[] matches = new long[16];
+        int count = 0;
+        for (int row = columns.nextRow(0); row != ContactColumns.NONE; row = columns.nextRow(row + 1)) {
+            int total = distance(queryWords, row, maxDistance);
+            if (total >= 0) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = ((long) total << 32) | columns.id(row);
+            }
+        }
+        
+        return Arrays.copyOf(matches, count);
+    }
+    
+    // Summed distance of each query word to its closest name word, -1 if a
+    // word has none close enough. The name's words are compared in place.
+    private int distance(String[] queryWords, int row, int maxDistance) {
+        int total = 0;
+        for (String queryWord : queryWords) {
+            int allowed = FuzzyNameIndex.allowedDistance(queryWord, maxDistance);
+            int best = columns.closestWord(row, queryWord, allowed);
+            if (best > allowed) {
+                return -1;
+            }
+            total += best;
+        }
+        return total;
+    }
+    
+    // Number, exact name and type lookups go through the columns' hash maps,
+    // sorted numbers and bitmaps; a scan builds views one row at a time
+    private class ColumnIndexes implements ContactIndexes {
+        @Override
+        public int size() {
+            return columns.size();
+        }
+        
+        @Override
+        public int estimate(ContactQuery leaf) {
+            return switch (leaf.kind()) {
+                case NAME_EQUALS -> columns.countOfName(leaf.text());
+                case NUMBER_EQUALS -> columns.rowOfNumber(leaf.number()) == ContactColumns.NONE ? 0 : 1;
+                case NUMBER_PREFIX -> columns.numberPrefixes().countWithPrefix(leaf.text());
+                case NUMBER_SUFFIX -> columns.numberPrefixes().countWithSuffix(leaf.text());
+                case TYPE -> columns.rowsOfType(leaf.type()).cardinality();
+                default -> NO_INDEX;
+            };
+        }
+        
+        @Override
+        public List<Contact> lookup(ContactQuery leaf) {
+            BitSet rows = switch (leaf.kind()) {
+                case NAME_EQUALS -> {
+                    BitSet matches = new BitSet();
+                    for (int row : columns.rowsOfName(leaf.text())) {
+                        matches.set(row);
+                    }
+                    yield matches;
+                }
+                case NUMBER_EQUALS -> {
+                    BitSet matches = new BitSet();
+                    int row = columns.rowOfNumber(leaf.number());
+                    if (row != ContactColumns.NONE) {
+                        matches.set(row);
+                    }
+                    yield matches;
+                }
+                case NUMBER_PREFIX -> rowsWithPrefix(leaf.text());
+                case NUMBER_SUFFIX -> rowsWithSuffix(leaf.text());
+                case TYPE -> columns.rowsOfType(leaf.type());
+                default -> throw new IllegalArgumentException("No index for " + leaf);
+            };
+            return viewsById(rows);
+        }
+        
+        @Override
+        public Iterable<Contact> scan() {
+            return () -> new Iterator<Contact>() {
+                private int row = columns.nextRow(0);
+                
+                @Override
+                public boolean hasNext() {
+                    return row != ContactColumns.NONE;
+                }
+                
+                @Override
+                public Contact next() {
+                    if (row == ContactColumns.NONE) {
+                        throw new NoSuchElementException();
+                    }
+                    Contact contact = view(row);
+                    row = columns.nextRow(row + 1);
+                    return contact;
+                }
+            };
+        }
+    }
+    
+    // Writes edits made on a view back to its row. A view of a deleted
+    // contact only edits itself, like a contact removed from ContactManager.
+    private class WriteBack implements ContactListener {
+        @Override
+        public boolean onNumberAdding(Contact contact, long number) {
+            int row = columns.rowOfId(contact.getId());
+            return row == ContactColumns.NONE || columns.addNumber(row, number);
+        }
+        
+        @Override
+        public void onNumberRemoved(Contact contact, long number) {
+            int row = columns.rowOfId(contact.getId());
+            if (row != ContactColumns.NONE) {
+                columns.removeNumber(row, number);
+                columns.compactIfSparse();
+            }
+        }
+        
+        @Override
+        public void onNameChanged(Contact contact, String oldName) {
+            int row = columns.rowOfId(contact.getId());
+            if (row != ContactColumns.NONE) {
+                columns.rename(row, contact.getName());
+                columns.compactIfSparse();
+            }
+        }
+        
+        @Override
+        public void onTypeChanged(Contact contact) {
+            int row = columns.rowOfId(contact.getId());
+            if (row != ContactColumns.NONE) {
+                columns.setType(row, contact.getContactType());
+            }
+        }
+    }
+}
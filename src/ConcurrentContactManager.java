@@ -0,0 +1,365 @@
+package com.ucas.addressbook;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// ContactManager that can be shared between threads.
+//
+// The contacts are kept in concurrent maps and every index has its own lock
+// (see LockedIndexes), so searches and writes run at the same time. Writes
+// are ordered by striped locks instead of one global lock: an add holds the
+// stripe of its name and of its number, a delete the stripes of the name and
+// number it removes. Two adds of the same number wait for each other and the
+// second one sees the first; adds of different names and numbers usually
+// share no stripe and run in parallel. Searches take no stripe, so they may
+// see a write in progress on another thread as either before or after it.
+// Contacts are listed in id order rather than insertion order.
+//
+// Clearing, snapshots and loading a saved snapshot still stop every other
+// operation: those hold the barrier lock exclusively, everything else shares
+// it. Until a restored snapshot is fully decoded lookups change the indexes,
+// so they hold it exclusively too.
+//
+// Edits made directly on returned contacts take the stripes of the contact's
+// name and of the number involved through the index listener. A number added
+// directly to a contact while another thread deletes that contact can still
+// stay indexed, as with a global lock: the contact's own array is updated
+// after the listener returns.
+public class ConcurrentContactManager extends ContactManager {
+    // Enough that unrelated writes rarely meet, a power of two for the mask
+    private static final int STRIPES = 64;
+    
+    private final ReentrantReadWriteLock barrier = new ReentrantReadWriteLock();
+    private final ReentrantLock[] nameLocks = newStripes();
+    private final ReentrantLock[] numberLocks = newStripes();
+    private final ValidationUtils validator = new ValidationUtils();
+    // Set when a write found a snapshot due; it is taken after the write's locks are released
+    private final AtomicBoolean checkpointDue = new AtomicBoolean();
+    
+    public ConcurrentContactManager() {
+        super(new IndexedContacts(true));
+        wrapIndexUpdater(LockedListener::new);
+    }
+    
+    public ConcurrentContactManager(ContactStorage storage) throws IOException {
+        super(new IndexedContacts(true), storage);
+        wrapIndexUpdater(LockedListener::new);
+    }
+    
+    @Override
+    public OperationResult tryAddContact(String name, String type, String phoneNumber, boolean allowMultipleNumbers) {
+        // Validation is the expensive part, done before taking any lock
+        PhoneCheck phone = validator.checkPhone(phoneNumber);
+        OperationResult invalid = firstFailure(name, type, phone);
+        if (invalid != null) {
+            return invalid;
+        }
+        return addValid(name, ContactType.standardize(type), phone.getCanonical(), allowMultipleNumbers);
+    }
+    
+    private OperationResult addValid(String name, ContactType type, long numberKey, boolean allowMultipleNumbers) {
+        return striped(nameLocks[nameStripe(name)], numberLocks[numberStripe(numberKey)],
+            () -> addValidContact(name, type, numberKey, allowMultipleNumbers));
+    }
+    
+    // Rows are validated in parallel a chunk at a time, then added one by one
+    // like tryAddContact, so other threads keep writing during a large import.
+    // Each row's name is indexed as it is added rather than once at the end.
+    @Override
+    public ImportReport importContacts(Stream<ImportRecord> records, boolean mergeSameName) {
+        ImportReport report = new ImportReport();
+        Iterator<ImportRecord> rows = records.iterator();
+        List<ImportRecord> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        while (rows.hasNext()) {
+            chunk.add(rows.next());
+            if (chunk.size() == IMPORT_CHUNK_SIZE || !rows.hasNext()) {
+                importChunk(chunk, mergeSameName, report);
+                chunk.clear();
+            }
+        }
+        return report;
+    }
+    
+    private void importChunk(List<ImportRecord> chunk, boolean mergeSameName, ImportReport report) {
+        OperationResult[] errors = new OperationResult[chunk.size()];
+        long[] numberKeys = new long[chunk.size()];
+        IntStream.range(0, chunk.size()).parallel().forEach(i -> {
+            ImportRecord record = chunk.get(i);
+            PhoneCheck phone = validator.checkPhone(record.getPhoneNumber());
+            errors[i] = firstFailure(record.getName(), record.getType(), phone);
+            numberKeys[i] = phone.getCanonical();
+        });
+        
+        for (int i = 0; i < errors.length; i++) {
+            ImportRecord record = chunk.get(i);
+            OperationResult result = errors[i] != null ? errors[i]
+                : addValid(record.getName(), ContactType.standardize(record.getType()), numberKeys[i], mergeSameName);
+            switch (result.getCode()) {
+                case CONTACT_ADDED -> report.contactAdded();
+                case NUMBER_ADDED -> report.numberMerged();
+                default -> report.reject(record, result);
+            }
+        }
+    }
+    
+    @Override
+    public List<Contact> searchByName(String name, boolean useFuzzy) {
+        return shared(() -> super.searchByName(name, useFuzzy));
+    }
+    
+    @Override
+    public List<Contact> searchByNameFuzzy(String name, int maxDistance) {
+        return shared(() -> super.searchByNameFuzzy(name, maxDistance));
+    }
+    
+    @Override
+    public List<SearchHit> searchRanked(String name, boolean useFuzzy, int limit) {
+        return shared(() -> super.searchRanked(name, useFuzzy, limit));
+    }
+    
+    @Override
+    public List<Contact> searchByType(ContactType type) {
+        return shared(() -> super.searchByType(type));
+    }
+    
+    @Override
+    public List<Contact> searchByNameAndType(String name, ContactType type) {
+        return shared(() -> super.searchByNameAndType(name, type));
+    }
+    
+    @Override
+    public List<Contact> search(ContactQuery query) {
+        return shared(() -> super.search(query));
+    }
+    
+    @Override
+    QueryPlanner.Plan explain(ContactQuery query) {
+        return shared(() -> super.explain(query));
+    }
+    
+    @Override
+    public List<Contact> searchByNumberPrefix(String prefix) {
+        return shared(() -> super.searchByNumberPrefix(prefix));
+    }
+    
+    @Override
+    public List<Contact> searchByNumberSuffix(String suffix) {
+        return shared(() -> super.searchByNumberSuffix(suffix));
+    }
+    
+    // streamContacts pages through this, taking the barrier once per page
+    @Override
+    public ContactPage getContactsPage(String pageToken, int pageSize) {
+        return shared(() -> super.getContactsPage(pageToken, pageSize));
+    }
+    
+    @Override
+    public List<Contact> searchByNumber(String number) {
+        return shared(() -> super.searchByNumber(number));
+    }
+    
+    @Override
+    public int deleteByName(String name) {
+        Lock stripe = nameLocks[nameStripe(name)];
+        return striped(stripe, stripe, () -> super.deleteByName(name));
+    }
+    
+    // The owner's name stripe is needed as well, so the owner is looked up
+    // first and checked again once both stripes are held
+    @Override
+    public boolean deleteByNumber(String number) {
+        long key = PhoneNumbers.canonical(number);
+        Lock numberLock = numberLocks[numberStripe(key)];
+        while (true) {
+            List<Contact> owners = searchByNumber(number);
+            if (owners.isEmpty()) {
+                return false;
+            }
+            Contact owner = owners.get(0);
+            int stripe = nameStripe(owner.getName());
+            Boolean deleted = striped(nameLocks[stripe], numberLock, () -> {
+                List<Contact> current = super.searchByNumber(number);
+                if (current.isEmpty() || current.get(0) != owner || nameStripe(owner.getName()) != stripe) {
+                    return null;
+                }
+                return super.deleteByNumber(number);
+            });
+            if (deleted != null) {
+                return deleted;
+            }
+        }
+    }
+    
+    @Override
+    public List<Contact> getAllContacts() {
+        return shared(super::getAllContacts);
+    }
+    
+    @Override
+    public int getContactCount() {
+        return shared(super::getContactCount);
+    }
+    
+    @Override
+    public void clearAllContacts() {
+        exclusive(() -> { super.clearAllContacts(); return null; });
+    }
+    
+    @Override
+    public void saveSnapshot() throws IOException {
+        barrier.writeLock().lock();
+        try {
+            super.saveSnapshot();
+        } finally {
+            barrier.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        barrier.writeLock().lock();
+        try {
+            super.close();
+        } finally {
+            barrier.writeLock().unlock();
+        }
+    }
+    
+    // A snapshot must not see half of a write, so one that falls due during
+    // striped writes is taken once the barrier can be held exclusively
+    @Override
+    void checkpoint() {
+        if (!isSnapshotDue()) {
+            return;
+        }
+        if (barrier.isWriteLockedByCurrentThread()) {
+            super.checkpoint();
+        } else {
+            checkpointDue.set(true);
+        }
+    }
+    
+    // Lookups decode saved contacts until the snapshot is fully loaded, which
+    // changes the indexes, so they share the barrier only after that
+    private <T> T shared(Supplier<T> operation) {
+        Lock held = isSnapshotLoaded() ? barrier.readLock() : barrier.writeLock();
+        held.lock();
+        T result;
+        try {
+            result = operation.get();
+        } finally {
+            held.unlock();
+        }
+        // Not while an outer call on this thread still holds the barrier
+        if (barrier.getReadHoldCount() == 0 && !barrier.isWriteLockedByCurrentThread()
+                && checkpointDue.compareAndSet(true, false)) {
+            exclusive(() -> { super.checkpoint(); return null; });
+        }
+        return result;
+    }
+    
+    // Stripes are always taken in index order, names before numbers, so two
+    // writers never wait for each other's stripes
+    private <T> T striped(Lock nameLock, Lock numberLock, Supplier<T> operation) {
+        return shared(() -> {
+            nameLock.lock();
+            try {
+                numberLock.lock();
+                try {
+                    return operation.get();
+                } finally {
+                    numberLock.unlock();
+                }
+            } finally {
+                nameLock.unlock();
+            }
+        });
+    }
+    
+    // Both name stripes of a rename, lower index first
+    private <T> T renaming(String oldName, String newName, Supplier<T> operation) {
+        int first = nameStripe(oldName);
+        int second = nameStripe(newName);
+        return striped(nameLocks[Math.min(first, second)], nameLocks[Math.max(first, second)], operation);
+    }
+    
+    private <T> T exclusive(Supplier<T> operation) {
+        barrier.writeLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            barrier.writeLock().unlock();
+        }
+    }
+    
+    // Names that only differ in case or spacing share a stripe, like their index entry
+    private static int nameStripe(String name) {
+        return spread(NGramIndex.normalize(name).hashCode());
+    }
+    
+    private static int numberStripe(long numberKey) {
+        return spread(Long.hashCode(numberKey));
+    }
+    
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+    
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        return stripes;
+    }
+    
+    // Runs index updates for direct contact edits under the stripes they touch
+    private class LockedListener implements ContactListener {
+        private final ContactListener target;
+        
+        LockedListener(ContactListener target) {
+            this.target = target;
+        }
+        
+        @Override
+        public boolean onNumberAdding(Contact contact, long number) {
+            return onNumber(contact, number, () -> target.onNumberAdding(contact, number));
+        }
+        
+        @Override
+        public void onNumberRemoved(Contact contact, long number) {
+            onNumber(contact, number, () -> { target.onNumberRemoved(contact, number); return null; });
+        }
+        
+        @Override
+        public void onNameChanged(Contact contact, String oldName) {
+            renaming(oldName, contact.getName(), () -> { target.onNameChanged(contact, oldName); return null; });
+        }
+        
+        @Override
+        public void onTypeChanged(Contact contact) {
+            String name = contact.getName();
+            renaming(name, name, () -> { target.onTypeChanged(contact); return null; });
+        }
+        
+        // The name stripe orders the edit with deletes of the contact. Called
+        // from an add or delete of this number, the stripes are already held;
+        // locking the name again could pick a new name's stripe mid-rename.
+        private <T> T onNumber(Contact contact, long number, Supplier<T> operation) {
+            ReentrantLock numberLock = numberLocks[numberStripe(number)];
+            if (numberLock.isHeldByCurrentThread()) {
+                return operation.get();
+            }
+            return striped(nameLocks[nameStripe(contact.getName())], numberLock, operation);
+        }
+    }
+}
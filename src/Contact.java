@@ -1,56 +1,171 @@
 package com.ucas.addressbook;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
 
 public class Contact {
-    private String name;
-    private String type;
-    private List<String> phoneNumbers;
+    // Volatile and copy-on-write so contacts shared by ConcurrentContactManager
+    // can be read while another thread edits them
+    private volatile String name;
+    private volatile ContactType type;
+    // Canonical numbers (see PhoneNumbers), replaced as a whole on every edit
+    private volatile long[] phoneNumbers;
     private int id;
-    private static int nextId = 1;
+    private volatile ContactListener listener;
+    private static volatile IdAllocator idAllocator = new AtomicIdAllocator();
     
     public Contact(String name, String type, String phoneNumber) {
-        this.id = nextId++;
-        this.name = name;
-        this.type = type;
-        this.phoneNumbers = new ArrayList<>();
-        this.phoneNumbers.add(phoneNumber);
+        this(name, type, List.of(phoneNumber));
     }
     
     // Constructor for multiple numbers (Bonus feature)
+    // Numbers are canonicalized, ones without digits are dropped; unknown
+    // types become Other (see ContactType.standardize)
     public Contact(String name, String type, List<String> phoneNumbers) {
-        this.id = nextId++;
+        this.id = idAllocator.nextId();
+        this.name = name;
+        this.type = ContactType.standardize(type);
+        this.phoneNumbers = canonical(phoneNumbers);
+    }
+    
+    // Used when restoring saved contacts or with an id from a BlockIdAllocator.
+    // Takes over the array, callers pass one they no longer use.
+    Contact(int id, String name, ContactType type, long[] phoneNumbers) {
+        this.id = id;
         this.name = name;
         this.type = type;
-        this.phoneNumbers = new ArrayList<>(phoneNumbers);
+        this.phoneNumbers = phoneNumbers;
+        idAllocator.advancePast(id);
     }
     
+    // Ids for new contacts come from here, shared by every ContactManager
+    public static IdAllocator getIdAllocator() { return idAllocator; }
+    public static void setIdAllocator(IdAllocator allocator) { idAllocator = allocator; }
+    
     // Getters
     public int getId() { return id; }
     public String getName() { return name; }
-    public String getType() { return type; }
-    public List<String> getPhoneNumbers() { return new ArrayList<>(phoneNumbers); }
+    public String getType() { return type.getDisplayName(); }
+    public ContactType getContactType() { return type; }
+    // Read-only view of the numbers at the time of the call, formatted as
+    // they are read; edits replace the array, so the view never changes
+    public List<String> getPhoneNumbers() { return new PhoneNumberList(phoneNumbers); }
+    public int getPhoneNumberCount() { return phoneNumbers.length; }
+    
+    public void forEachPhoneNumber(Consumer<String> action) {
+        for (long number : phoneNumbers) {
+            action.accept(PhoneNumbers.format(number));
+        }
+    }
+    
+    // Canonical numbers for indexes and storage, callers must not modify the array
+    long[] getPhoneNumberKeys() { return phoneNumbers; }
     
     // Setters
-    public void setName(String name) { this.name = name; }
-    public void setType(String type) { this.type = type; }
+    public void setName(String name) {
+        String oldName = this.name;
+        this.name = name;
+        if (listener != null) {
+            listener.onNameChanged(this, oldName);
+        }
+    }
+    public void setType(String type) {
+        setType(ContactType.standardize(type));
+    }
+    public void setType(ContactType type) {
+        this.type = Objects.requireNonNull(type);
+        if (listener != null) {
+            listener.onTypeChanged(this);
+        }
+    }
+    
+    // Set by ContactManager while this contact is stored in it
+    void setListener(ContactListener listener) { this.listener = listener; }
     
     // Phone number management
     public boolean addPhoneNumber(String number) {
-        if (!phoneNumbers.contains(number)) {
-            phoneNumbers.add(number);
-            return true;
+        return addPhoneNumber(PhoneNumbers.canonical(number));
+    }
+    
+    boolean addPhoneNumber(long number) {
+        if (number == PhoneNumbers.INVALID || hasPhoneNumber(number)) {
+            return false;
+        }
+        // The listener may take a ContactManager lock, so it runs before this
+        // contact's own lock, which is only held for the array swap
+        if (listener != null && !listener.onNumberAdding(this, number)) {
+            return false;
         }
-        return false;
+        synchronized (this) {
+            long[] numbers = phoneNumbers;
+            if (indexOf(numbers, number) >= 0) {
+                return false;
+            }
+            long[] grown = Arrays.copyOf(numbers, numbers.length + 1);
+            grown[numbers.length] = number;
+            phoneNumbers = grown;
+        }
+        return true;
     }
     
     public boolean removePhoneNumber(String number) {
-        return phoneNumbers.remove(number);
+        return removePhoneNumber(PhoneNumbers.canonical(number));
+    }
+    
+    boolean removePhoneNumber(long number) {
+        synchronized (this) {
+            long[] numbers = phoneNumbers;
+            int index = indexOf(numbers, number);
+            if (index < 0) {
+                return false;
+            }
+            long[] shrunk = new long[numbers.length - 1];
+            System.arraycopy(numbers, 0, shrunk, 0, index);
+            System.arraycopy(numbers, index + 1, shrunk, index, shrunk.length - index);
+            phoneNumbers = shrunk;
+        }
+        if (listener != null) {
+            listener.onNumberRemoved(this, number);
+        }
+        return true;
     }
     
+    // Formatting is ignored: "059-912-3456" matches "0599123456"
     public boolean hasPhoneNumber(String number) {
-        return phoneNumbers.contains(number);
+        return hasPhoneNumber(PhoneNumbers.canonical(number));
+    }
+    
+    boolean hasPhoneNumber(long number) {
+        return number != PhoneNumbers.INVALID && indexOf(phoneNumbers, number) >= 0;
+    }
+    
+    private static int indexOf(long[] numbers, long number) {
+        return indexOf(numbers, numbers.length, number);
+    }
+    
+    private static int indexOf(long[] numbers, int length, long number) {
+        for (int i = 0; i < length; i++) {
+            if (numbers[i] == number) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static long[] canonical(List<String> phoneNumbers) {
+        long[] numbers = new long[phoneNumbers.size()];
+        int count = 0;
+        for (String phoneNumber : phoneNumbers) {
+            long number = PhoneNumbers.canonical(phoneNumber);
+            if (number != PhoneNumbers.INVALID && indexOf(numbers, count, number) < 0) {
+                numbers[count++] = number;
+            }
+        }
+        return count == numbers.length ? numbers : Arrays.copyOf(numbers, count);
     }
     
     // Search methods
@@ -68,22 +183,26 @@ public class Contact {
             return true;
         }
         
-        // Check length similarity
-        int diff = Math.abs(contactName.length() - searchName.length());
-        if (diff <= 2) {
-            // Count matching characters
-            int matches = 0;
-            int minLength = Math.min(contactName.length(), searchName.length());
-            for (int i = 0; i < minLength; i++) {
-                if (contactName.charAt(i) == searchName.charAt(i)) {
-                    matches++;
-                }
-            }
-            double similarity = (double) matches / Math.max(contactName.length(), searchName.length());
-            return similarity >= 0.7; // 70% similarity threshold
+        // Edit distance similarity (Damerau-Levenshtein)
+        return EditDistance.isSimilar(contactName, searchName, 0.7); // 70% similarity threshold
+    }
+    
+    private static final class PhoneNumberList extends AbstractList<String> implements RandomAccess {
+        private final long[] numbers;
+        
+        PhoneNumberList(long[] numbers) {
+            this.numbers = numbers;
+        }
+        
+        @Override
+        public String get(int index) {
+            return PhoneNumbers.format(numbers[Objects.checkIndex(index, numbers.length)]);
         }
         
-        return false;
+        @Override
+        public int size() {
+            return numbers.length;
+        }
     }
     
     @Override
@@ -94,11 +213,10 @@ public class Contact {
           .append(" | Type: ").append(type)
           .append(" | Numbers: ");
         
-        for (int i = 0; i < phoneNumbers.size(); i++) {
-            sb.append(phoneNumbers.get(i));
-            if (i < phoneNumbers.size() - 1) {
-                sb.append(", ");
-            }
+        String separator = "";
+        for (long number : phoneNumbers) {
+            sb.append(separator).append(PhoneNumbers.format(number));
+            separator = ", ";
         }
         
         return sb.toString();
@@ -106,10 +224,10 @@ public class Contact {
     
     public String toFormattedString() {
         StringBuilder sb = new StringBuilder();
-        for (String number : phoneNumbers) {
+        for (long number : phoneNumbers) {
             sb.append("(").append(name)
               .append(", ").append(type)
-              .append(", ").append(number)
+              .append(", ").append(PhoneNumbers.format(number))
               .append(")\n");
         }
         return sb.toString();
@@ -0,0 +1,540 @@
+package com.ucas.addressbook;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Contacts stored column by column instead of as objects: one array per field,
+// indexed by row. Names share one char arena and numbers one long arena, types
+// are a byte holding the ContactType ordinal. A million contacts are a dozen large arrays
+// instead of millions of small objects, and a scan over names reads contiguous
+// memory.
+//
+// Rows keep insertion order. Deleted rows, replaced names and moved number
+// lists leave garbage behind until compactIfSparse() rewrites the columns;
+// row numbers change then, ids do not.
+// Not thread-safe.
+final class ContactColumns {
+    // Row returned by lookups that find nothing
+    static final int NONE = -1;
+    
+    private static final int MIN_ROWS = 16;
+    private static final ContactType[] TYPES = ContactType.values();
+    
+    // Row columns
+    private int[] ids;
+    private byte[] types;
+    private int[] nameStarts;
+    private int[] nameLengths;
+    private int[] numberStarts;
+    private int[] numberCounts;
+    // Next row with the same name hash, chained from firstRowByName
+    private int[] nextSameName;
+    private final BitSet live = new BitSet();
+    private int rows;
+    private int liveRows;
+    
+    // Arenas, with the space no row points to any more
+    private char[] names;
+    private int namesUsed;
+    private int nameGarbage;
+    private long[] numbers;
+    private int numbersUsed;
+    private int numberGarbage;
+    
+    // Rows by type, kept across compactions
+    private final TypeIndex typeIndex = new TypeIndex();
+    // Numbers in digit order, which compaction does not change
+    private final NumberPrefixIndex numberPrefixes = new NumberPrefixIndex();
+    
+    private LongIntMap rowsById;
+    private LongIntMap rowsByNumber;
+    // Case-folded name hash -> newest row with that hash
+    private LongIntMap firstRowByName;
+    // Reused by closestWord, so a scan over every row allocates nothing
+    private final NameWord word = new NameWord();
+    
+    ContactColumns() {
+        allocate(MIN_ROWS, MIN_ROWS * 8, MIN_ROWS);
+    }
+    
+    // Live contacts
+    int size() {
+        return liveRows;
+    }
+    
+    // Live rows, callers must not modify the bitmap
+    BitSet rows() {
+        return live;
+    }
+    
+    // First live row at or after the given one, NONE past the last row
+    int nextRow(int from) {
+        int row = live.nextSetBit(from);
+        return row < 0 ? NONE : row;
+    }
+    
+    // Appends a contact; the caller has checked that the number is free
+    int add(int id, String name, ContactType type, long number) {
+        if (rows == ids.length) {
+            growRows(rows + (rows >> 1));
+        }
+        int row = rows++;
+        ids[row] = id;
+        types[row] = (byte) type.ordinal();
+        appendName(row, name);
+        ensureNumbers(1);
+        numberStarts[row] = numbersUsed;
+        numberCounts[row] = 1;
+        numbers[numbersUsed++] = number;
+        
+        live.set(row);
+        liveRows++;
+        rowsById.put(id, row);
+        rowsByNumber.put(number, row);
+        numberPrefixes.add(number);
+        typeIndex.add(row, type);
+        linkName(row);
+        return row;
+    }
+    
+    void delete(int row) {
+        unlinkName(row);
+        for (int i = 0; i < numberCounts[row]; i++) {
+            rowsByNumber.remove(numbers[numberStarts[row] + i]);
+            numberPrefixes.remove(numbers[numberStarts[row] + i]);
+        }
+        rowsById.remove(ids[row]);
+        typeIndex.remove(row);
+        live.clear(row);
+        liveRows--;
+        nameGarbage += nameLengths[row];
+        numberGarbage += numberCounts[row];
+    }
+    
+    void clear() {
+        live.clear();
+        typeIndex.clear();
+        numberPrefixes.clear();
+        allocate(MIN_ROWS, MIN_ROWS * 8, MIN_ROWS);
+    }
+    
+    int rowOfId(int id) {
+        return rowsById.get(id);
+    }
+    
+    // First live row whose id is at least the given one, NONE if there is
+    // none. Rows are appended with increasing ids and compaction keeps their
+    // order, so the id column is sorted.
+    int rowFromId(int id) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return nextRow(low);
+    }
+    
+    // Row owning the canonical number (see PhoneNumbers)
+    int rowOfNumber(long number) {
+        return rowsByNumber.get(number);
+    }
+    
+    // Rows whose name equals the given one ignoring case, in the order they
+    // got the name. Chains are newest first, so the array is filled from the end.
+    int[] rowsOfName(String name) {
+        char[] folded = fold(name);
+        int[] matches = new int[countOfName(folded)];
+        int next = matches.length;
+        for (int row = firstRowByName.get(hash(folded)); row != NONE; row = nextSameName[row]) {
+            if (hasName(row, folded)) {
+                matches[--next] = row;
+            }
+        }
+        return matches;
+    }
+    
+    // Oldest row with the name (rowsOfName(name)[0]), NONE if there is none
+    int firstRowOfName(String name) {
+        char[] folded = fold(name);
+        int first = NONE;
+        for (int row = firstRowByName.get(hash(folded)); row != NONE; row = nextSameName[row]) {
+            if (hasName(row, folded)) {
+                first = row;
+            }
+        }
+        return first;
+    }
+    
+    int countOfName(String name) {
+        return countOfName(fold(name));
+    }
+    
+    private int countOfName(char[] folded) {
+        int count = 0;
+        for (int row = firstRowByName.get(hash(folded)); row != NONE; row = nextSameName[row]) {
+            if (hasName(row, folded)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    int id(int row) { return ids[row]; }
+    ContactType type(int row) { return TYPES[types[row]]; }
+    int numberCount(int row) { return numberCounts[row]; }
+    
+    String name(int row) {
+        return new String(names, nameStarts[row], nameLengths[row]);
+    }
+    
+    long[] numbers(int row) {
+        int start = numberStarts[row];
+        return Arrays.copyOfRange(numbers, start, start + numberCounts[row]);
+    }
+    
+    // Whether the name contains the query, which must already be folded
+    boolean nameContains(int row, char[] query) {
+        int last = nameLengths[row] - query.length;
+        for (int offset = 0; offset <= last; offset++) {
+            if (regionMatches(row, offset, query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Whether a word of the name equals one of the candidates, which must
+    // already be folded. Words are split as in FuzzyNameIndex.words.
+    boolean hasWord(int row, char[][] candidates) {
+        int end = nameStarts[row] + nameLengths[row];
+        for (int start = nextWord(nameStarts[row], end); start < end; start = nextWord(start, end)) {
+            int length = wordLength(start, end);
+            for (char[] candidate : candidates) {
+                if (candidate.length == length && regionMatches(row, start - nameStarts[row], candidate)) {
+                    return true;
+                }
+            }
+            start += length;
+        }
+        return false;
+    }
+    
+    // Fewest edits between the query word and a word of the name, or max + 1
+    // when none is within max edits (see EditDistance.within)
+    int closestWord(int row, String query, int max) {
+        int best = max + 1;
+        int end = nameStarts[row] + nameLengths[row];
+        for (int start = nextWord(nameStarts[row], end); start < end && best > 0; start = nextWord(start, end)) {
+            int length = wordLength(start, end);
+            word.set(start, length);
+            // Only a closer word can change the answer
+            best = Math.min(best, EditDistance.within(word, query, best - 1));
+            start += length;
+        }
+        return best;
+    }
+    
+    void rename(int row, String name) {
+        unlinkName(row);
+        nameGarbage += nameLengths[row];
+        appendName(row, name);
+        linkName(row);
+    }
+    
+    void setType(int row, ContactType type) {
+        types[row] = (byte) type.ordinal();
+        typeIndex.update(row, type);
+    }
+    
+    // Live rows of the type, callers must not modify the bitmap
+    BitSet rowsOfType(ContactType type) {
+        return typeIndex.bits(type);
+    }
+    
+    // Numbers for prefix and suffix searches, callers must not modify it;
+    // rowOfNumber gives the owners
+    NumberPrefixIndex numberPrefixes() {
+        return numberPrefixes;
+    }
+    
+    // False if the number already belongs to a contact
+    boolean addNumber(int row, long number) {
+        if (rowsByNumber.containsKey(number)) {
+            return false;
+        }
+        int start = numberStarts[row];
+        int count = numberCounts[row];
+        if (start + count == numbersUsed) {
+            // Last list in the arena grows in place
+            ensureNumbers(1);
+        } else {
+            ensureNumbers(count + 1);
+            System.arraycopy(numbers, start, numbers, numbersUsed, count);
+            numberStarts[row] = numbersUsed;
+            numbersUsed += count;
+            numberGarbage += count;
+        }
+        numbers[numbersUsed++] = number;
+        numberCounts[row] = count + 1;
+        rowsByNumber.put(number, row);
+        numberPrefixes.add(number);
+        return true;
+    }
+    
+    boolean removeNumber(int row, long number) {
+        int start = numberStarts[row];
+        int count = numberCounts[row];
+        for (int i = 0; i < count; i++) {
+            if (numbers[start + i] == number) {
+                System.arraycopy(numbers, start + i + 1, numbers, start + i, count - i - 1);
+                numberCounts[row] = count - 1;
+                if (start + count == numbersUsed) {
+                    numbersUsed--;
+                } else {
+                    numberGarbage++;
+                }
+                rowsByNumber.remove(number);
+                numberPrefixes.remove(number);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Rewrites the columns without deleted rows and arena garbage once that
+    // is more than the live data. Invalidates row numbers held by callers.
+    void compactIfSparse() {
+        if (rows - liveRows > Math.max(MIN_ROWS, liveRows)
+                || nameGarbage > Math.max(MIN_ROWS * 8, namesUsed - nameGarbage)
+                || numberGarbage > Math.max(MIN_ROWS, numbersUsed - numberGarbage)) {
+            compact();
+        }
+    }
+    
+    private void compact() {
+        int[] oldIds = ids;
+        byte[] oldTypes = types;
+        int[] oldNameStarts = nameStarts;
+        int[] oldNameLengths = nameLengths;
+        int[] oldNumberStarts = numberStarts;
+        int[] oldNumberCounts = numberCounts;
+        char[] oldNames = names;
+        long[] oldNumbers = numbers;
+        int[] oldNextSameName = nextSameName;
+        LongIntMap oldFirstRowByName = firstRowByName;
+        BitSet oldLive = (BitSet) live.clone();
+        int[] newRows = new int[oldIds.length];
+        int[] oldRows = new int[liveRows];
+        
+        allocate(Math.max(MIN_ROWS, liveRows), Math.max(MIN_ROWS * 8, namesUsed - nameGarbage),
+            Math.max(MIN_ROWS, numbersUsed - numberGarbage));
+        live.clear();
+        typeIndex.clear();
+        for (int old = oldLive.nextSetBit(0); old >= 0; old = oldLive.nextSetBit(old + 1)) {
+            int row = rows++;
+            newRows[old] = row;
+            oldRows[row] = old;
+            ids[row] = oldIds[old];
+            types[row] = oldTypes[old];
+            
+            nameStarts[row] = namesUsed;
+            nameLengths[row] = oldNameLengths[old];
+            System.arraycopy(oldNames, oldNameStarts[old], names, namesUsed, oldNameLengths[old]);
+            namesUsed += oldNameLengths[old];
+            
+            numberStarts[row] = numbersUsed;
+            numberCounts[row] = oldNumberCounts[old];
+            System.arraycopy(oldNumbers, oldNumberStarts[old], numbers, numbersUsed, oldNumberCounts[old]);
+            for (int i = 0; i < numberCounts[row]; i++) {
+                rowsByNumber.put(numbers[numbersUsed + i], row);
+            }
+            numbersUsed += numberCounts[row];
+            
+            live.set(row);
+            liveRows++;
+            rowsById.put(ids[row], row);
+            typeIndex.add(row, TYPES[types[row]]);
+        }
+        
+        // Same chains with the new row numbers, so rowsOfName keeps its order
+        for (int row = 0; row < rows; row++) {
+            int oldNext = oldNextSameName[oldRows[row]];
+            nextSameName[row] = oldNext == NONE ? NONE : newRows[oldNext];
+            long key = nameHash(row);
+            if (oldFirstRowByName.get(key) == oldRows[row]) {
+                firstRowByName.put(key, row);
+            }
+        }
+    }
+    
+    private void allocate(int rowCapacity, int nameCapacity, int numberCapacity) {
+        ids = new int[rowCapacity];
+        types = new byte[rowCapacity];
+        nameStarts = new int[rowCapacity];
+        nameLengths = new int[rowCapacity];
+        numberStarts = new int[rowCapacity];
+        numberCounts = new int[rowCapacity];
+        nextSameName = new int[rowCapacity];
+        names = new char[nameCapacity];
+        numbers = new long[numberCapacity];
+        rows = 0;
+        liveRows = 0;
+        namesUsed = 0;
+        nameGarbage = 0;
+        numbersUsed = 0;
+        numberGarbage = 0;
+        rowsById = new LongIntMap(rowCapacity);
+        rowsByNumber = new LongIntMap(numberCapacity);
+        firstRowByName = new LongIntMap(rowCapacity);
+    }
+    
+    private void growRows(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        types = Arrays.copyOf(types, capacity);
+        nameStarts = Arrays.copyOf(nameStarts, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        numberStarts = Arrays.copyOf(numberStarts, capacity);
+        numberCounts = Arrays.copyOf(numberCounts, capacity);
+        nextSameName = Arrays.copyOf(nextSameName, capacity);
+    }
+    
+    private void ensureNumbers(int extra) {
+        if (numbersUsed + extra > numbers.length) {
+            numbers = Arrays.copyOf(numbers, Math.max(numbersUsed + extra, numbers.length + (numbers.length >> 1)));
+        }
+    }
+    
+    private void appendName(int row, String name) {
+        String value = name == null ? "" : name;
+        int length = value.length();
+        if (namesUsed + length > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesUsed + length, names.length + (names.length >> 1)));
+        }
+        value.getChars(0, length, names, namesUsed);
+        nameStarts[row] = namesUsed;
+        nameLengths[row] = length;
+        namesUsed += length;
+    }
+    
+    private void linkName(int row) {
+        long key = nameHash(row);
+        nextSameName[row] = firstRowByName.get(key);
+        firstRowByName.put(key, row);
+    }
+    
+    private void unlinkName(int row) {
+        long key = nameHash(row);
+        int first = firstRowByName.get(key);
+        if (first == row) {
+            if (nextSameName[row] == NONE) {
+                firstRowByName.remove(key);
+            } else {
+                firstRowByName.put(key, nextSameName[row]);
+            }
+            return;
+        }
+        for (int previous = first; previous != NONE; previous = nextSameName[previous]) {
+            if (nextSameName[previous] == row) {
+                nextSameName[previous] = nextSameName[row];
+                return;
+            }
+        }
+    }
+    
+    // First arena position at or after from that starts a word, end if none
+    private int nextWord(int from, int end) {
+        while (from < end && !Character.isLetterOrDigit(names[from])) {
+            from++;
+        }
+        return from;
+    }
+    
+    private int wordLength(int start, int end) {
+        int stop = start;
+        while (stop < end && Character.isLetterOrDigit(names[stop])) {
+            stop++;
+        }
+        return stop - start;
+    }
+    
+    private boolean hasName(int row, char[] folded) {
+        return nameLengths[row] == folded.length && regionMatches(row, 0, folded);
+    }
+    
+    // Compares the folded query with the name at the given offset
+    private boolean regionMatches(int row, int offset, char[] folded) {
+        int start = nameStarts[row] + offset;
+        for (int i = 0; i < folded.length; i++) {
+            if (Character.toLowerCase(names[start + i]) != folded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private long nameHash(int row) {
+        int h = 0;
+        int start = nameStarts[row];
+        for (int i = 0; i < nameLengths[row]; i++) {
+            h = 31 * h + Character.toLowerCase(names[start + i]);
+        }
+        return h & 0xFFFFFFFFL;
+    }
+    
+    private static long hash(char[] folded) {
+        int h = 0;
+        for (char c : folded) {
+            h = 31 * h + c;
+        }
+        return h & 0xFFFFFFFFL;
+    }
+    
+    // Lower-cases char by char so lengths line up with the stored names
+    static char[] fold(String text) {
+        char[] folded = text == null ? new char[0] : text.toCharArray();
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(folded[i]);
+        }
+        return folded;
+    }
+    
+    // A word in the name arena, lower-cased as it is read
+    private final class NameWord implements CharSequence {
+        private int start;
+        private int length;
+        
+        void set(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+        
+        @Override
+        public int length() {
+            return length;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return Character.toLowerCase(names[start + index]);
+        }
+        
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+        
+        @Override
+        public String toString() {
+            char[] folded = Arrays.copyOfRange(names, start, start + length);
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = Character.toLowerCase(folded[i]);
+            }
+            return new String(folded);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.ucas.addressbook;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Synthetic address books for benchmarks and load tests, e.g.
+//   new ContactGenerator(42).withTypos(0.05).writeCsv(file, 1_000_000)
+// Names mix Latin and Arabic script and use the spelling variants the
+// VariationDictionary knows ("Mohamed", "Muhammad", "محمد"); numbers are
+// Palestinian mobiles and landlines in the formats people type.
+//
+// Contact i depends only on the seed and i, so the same seed always gives the
+// same book and nothing is kept in memory while streaming. Every number is
+// unique except for the deliberate duplicates, which repeat an earlier
+// contact's name and number and are rejected with NUMBER_EXISTS on import.
+public final class ContactGenerator {
+    // Each contact owns three number slots and each prefix block 10M numbers
+    public static final int MAX_CONTACTS = 20_000_000;
+    
+    private static final int NUMBER_SLOTS = 3;
+    private static final int BLOCK = 10_000_000;
+    // Mobiles (10 digits) and landlines (9 digits)
+    private static final String[] PREFIXES = { "059", "056", "08", "02", "09", "04" };
+    private static final String[][] FIRST_NAMES = {
+        { "Mohamed", "Mohamad", "Mohammed", "Muhammad" },
+        { "Ahmed", "Ahmad" },
+        { "Ali", "Aly" },
+        { "Yousef", "Yusuf", "Youssef" },
+        { "Khaled", "Khalid" },
+        { "Osama", "Usama" },
+        { "Hassan", "Hassaan" },
+        { "Ibrahim", "Ibraheem" },
+        { "Nour", "Noor" },
+        { "Fatima", "Fatma", "Fatimah" },
+        { "Omar" }, { "Mahmoud" }, { "Sara" }, { "Layla" }, { "Mariam" }, { "Huda" },
+        { "John" }, { "David" }, { "Maria" }, { "Emily" }
+    };
+    private static final String[] ARABIC_FIRST_NAMES = {
+        "محمد", "احمد", "علي", "يوسف", "خالد", "اسامة", "حسن", "ابراهيم", "نور", "فاطمة", "عمر", "مريم"
+    };
+    private static final String[] LAST_NAMES = {
+        "Saleh", "Abu Shawish", "Al-Masri", "Haddad", "Khalil", "Nasser", "Mansour", "Awad", "Hamdan", "O'Neill",
+        "Odeh", "Zaki", "Abu Mandeel", "El-Sayegh", "Smith", "Johnson", "Brown", "Taylor", "Wilson", "Evans"
+    };
+    private static final String[] ARABIC_LAST_NAMES = {
+        "صالح", "ابو شاويش", "المصري", "حداد", "خليل", "ناصر", "منصور", "عوض", "حمدان", "الصايغ"
+    };
+    // Weighted: Personal and Work are the most common
+    private static final String[] TYPES = { "Personal", "Personal", "Personal", "Work", "Work", "Work", "Family", "Family", "Other" };
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    private final long seed;
+    private final double arabicShare;
+    private final double extraNumberShare;
+    private final double duplicateShare;
+    private final double typoShare;
+    
+    // 30% Arabic names, 10% with more than one number, no duplicates or typos
+    public ContactGenerator(long seed) {
+        this(seed, 0.3, 0.1, 0, 0);
+    }
+    
+    private ContactGenerator(long seed, double arabicShare, double extraNumberShare, double duplicateShare, double typoShare) {
+        this.seed = seed;
+        this.arabicShare = share(arabicShare);
+        this.extraNumberShare = share(extraNumberShare);
+        this.duplicateShare = share(duplicateShare);
+        this.typoShare = share(typoShare);
+    }
+    
+    // Share of names written in Arabic script
+    public ContactGenerator withArabicNames(double share) {
+        return new ContactGenerator(seed, share, extraNumberShare, duplicateShare, typoShare);
+    }
+    
+    // Share of contacts with two or three numbers
+    public ContactGenerator withExtraNumbers(double share) {
+        return new ContactGenerator(seed, arabicShare, share, duplicateShare, typoShare);
+    }
+    
+    // Share of contacts that repeat an earlier contact's name and number
+    public ContactGenerator withDuplicates(double share) {
+        return new ContactGenerator(seed, arabicShare, extraNumberShare, share, typoShare);
+    }
+    
+    // Share of names with one letter swapped or dropped
+    public ContactGenerator withTypos(double share) {
+        return new ContactGenerator(seed, arabicShare, extraNumberShare, duplicateShare, share);
+    }
+    
+    // One record per number, lazily; import with mergeSameName to put extra
+    // numbers back on their contact (contacts that happen to share a name
+    // are merged too)
+    public Stream<ImportRecord> records(int contacts) {
+        AtomicInteger line = new AtomicInteger();
+        return indexes(contacts).boxed().flatMap(index -> {
+            Generated contact = contact(index);
+            return contact.phoneNumbers.stream()
+                .map(number -> new ImportRecord(line.incrementAndGet(), contact.name, contact.type, number));
+        });
+    }
+    
+    // Contact objects for SearchEngine, which works on plain lists
+    public Stream<Contact> contacts(int contacts) {
+        return indexes(contacts).mapToObj(index -> {
+            Generated contact = contact(index);
+            return new Contact(contact.name, contact.type, contact.phoneNumbers);
+        });
+    }
+    
+    // "name,type,phone" lines, readable with ImportRecord.readCsv
+    public void writeCsv(Path file, int contacts) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("name,type,phone");
+            out.newLine();
+            for (ImportRecord record : (Iterable<ImportRecord>) records(contacts)::iterator) {
+                out.write(record.getName());
+                out.write(',');
+                out.write(record.getType());
+                out.write(',');
+                out.write(record.getPhoneNumber());
+                out.newLine();
+            }
+        }
+    }
+    
+    // Name and first number of contact i, e.g. to pick search targets
+    public String name(int index) {
+        return contact(index).name;
+    }
+    
+    public String phoneNumber(int index) {
+        return contact(index).phoneNumbers.get(0);
+    }
+    
+    private IntStream indexes(int contacts) {
+        if (contacts < 0 || contacts > MAX_CONTACTS) {
+            throw new IllegalArgumentException("Contacts must be between 0 and " + MAX_CONTACTS + ": " + contacts);
+        }
+        return IntStream.range(0, contacts);
+    }
+    
+    private Generated contact(int index) {
+        SplittableRandom random = random(index);
+        if (index > 0 && random.nextDouble() < duplicateShare) {
+            // Earlier contact as first generated, with only its first number
+            Generated original = original(random.nextInt(index));
+            return new Generated(original.name, original.type, List.of(original.phoneNumbers.get(0)));
+        }
+        return original(index);
+    }
+    
+    // Contact i before any duplicate is substituted for it
+    private Generated original(int index) {
+        // Independent of the duplicate draw so an original is the same wherever it is generated
+        SplittableRandom random = random(index).split();
+        String name = name(random);
+        if (random.nextDouble() < typoShare) {
+            name = typo(name, random);
+        }
+        String type = TYPES[random.nextInt(TYPES.length)];
+        
+        int count = random.nextDouble() < extraNumberShare ? 2 + random.nextInt(NUMBER_SLOTS - 1) : 1;
+        List<String> numbers = new ArrayList<>(count);
+        for (int slot = 0; slot < count; slot++) {
+            numbers.add(number((long) index * NUMBER_SLOTS + slot, random));
+        }
+        return new Generated(name, type, numbers);
+    }
+    
+    private SplittableRandom random(int index) {
+        return new SplittableRandom(seed + index * GOLDEN_GAMMA);
+    }
+    
+    private String name(SplittableRandom random) {
+        if (random.nextDouble() < arabicShare) {
+            return ARABIC_FIRST_NAMES[random.nextInt(ARABIC_FIRST_NAMES.length)] + " "
+                + ARABIC_LAST_NAMES[random.nextInt(ARABIC_LAST_NAMES.length)];
+        }
+        // Squaring favours the first groups, so Mohamed and Ahmed are the most common
+        String[] variants = FIRST_NAMES[(int) (FIRST_NAMES.length * Math.pow(random.nextDouble(), 2))];
+        return variants[random.nextInt(variants.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+    
+    // Swaps two neighbouring letters of the first word, or drops one
+    private static String typo(String name, SplittableRandom random) {
+        int end = name.indexOf(' ');
+        if (end < 3) {
+            return name;
+        }
+        int at = 1 + random.nextInt(end - 2);
+        if (random.nextBoolean()) {
+            return name.substring(0, at) + name.charAt(at + 1) + name.charAt(at) + name.substring(at + 2);
+        }
+        return name.substring(0, at) + name.substring(at + 1);
+    }
+    
+    // Slot n gets a prefix block and a scrambled 7-digit subscriber number;
+    // multiplying by a number coprime to 10 keeps the numbers in a block unique
+    private static String number(long slot, SplittableRandom random) {
+        String prefix = PREFIXES[(int) (slot / BLOCK)];
+        String subscriber = String.format("%07d", slot % BLOCK * 7_654_321 % BLOCK);
+        if (prefix.length() == 2) {
+            // Landline, 08-2xxxxxx
+            return random.nextBoolean() ? prefix + "-" + subscriber : prefix + subscriber;
+        }
+        String local = prefix.substring(1) + subscriber;
+        return switch (random.nextInt(5)) {
+            case 0 -> "0" + local;
+            case 1 -> "0" + local.substring(0, 2) + "-" + local.substring(2, 5) + "-" + local.substring(5);
+            case 2 -> "+970 " + local.substring(0, 3) + " " + local.substring(3, 6) + " " + local.substring(6);
+            case 3 -> "970" + local;
+            default -> "0" + local.substring(0, 2) + " " + local.substring(2, 5) + " " + local.substring(5);
+        };
+    }
+    
+    private static double share(double share) {
+        if (!(share >= 0 && share <= 1)) {
+            throw new IllegalArgumentException("Share must be between 0 and 1: " + share);
+        }
+        return share;
+    }
+    
+    private static final class Generated {
+        final String name;
+        final String type;
+        final List<String> phoneNumbers;
+        
+        Generated(String name, String type, List<String> phoneNumbers) {
+            this.name = name;
+            this.type = type;
+            this.phoneNumbers = phoneNumbers;
+        }
+    }
+}
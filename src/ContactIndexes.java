@@ -0,0 +1,23 @@
+package com.ucas.addressbook;
+
+import java.util.List;
+
+// What the QueryPlanner needs from a contact store: cheap size estimates for
+// the predicates it has an index for, lookups through those indexes, and a
+// full scan for everything else.
+interface ContactIndexes {
+    // Returned by estimate() for predicates without an index
+    int NO_INDEX = -1;
+    
+    int size();
+    
+    // Expected number of contacts matching a leaf query (not AND/OR/NOT), an
+    // upper bound is fine. NO_INDEX if lookup() cannot answer it.
+    int estimate(ContactQuery leaf);
+    
+    // Contacts matching the leaf query, in id order
+    List<Contact> lookup(ContactQuery leaf);
+    
+    // Every contact, in any order
+    Iterable<Contact> scan();
+}
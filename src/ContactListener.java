@@ -0,0 +1,15 @@
+package com.ucas.addressbook;
+
+// Callbacks used by ContactManager to keep its indexes in sync with edits
+// made directly on a stored Contact
+interface ContactListener {
+    // Numbers are canonical (see PhoneNumbers). Return false to reject the
+    // number (e.g. it already belongs to another contact)
+    boolean onNumberAdding(Contact contact, long number);
+    
+    void onNumberRemoved(Contact contact, long number);
+    
+    void onNameChanged(Contact contact, String oldName);
+    
+    void onTypeChanged(Contact contact);
+}
@@ -1,67 +1,275 @@
 package com.ucas.addressbook;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class ContactManager {
-    private List<Contact> contacts;
+public class ContactManager implements Closeable {
+    private static final int DEFAULT_FUZZY_DISTANCE = 2;
+    // Rows validated in parallel per round of a bulk import
+    static final int IMPORT_CHUNK_SIZE = 4096;
+    // Contacts fetched at a time by streamContacts
+    private static final int STREAM_PAGE_SIZE = 256;
+    
+    // Null in subclasses that keep contacts elsewhere, see ContactManager(IndexedContacts)
+    private final IndexedContacts indexed;
     private ValidationUtils validator;
+    private final ContactIndexes queryIndexes = new QueryIndexes();
+    private ContactListener indexUpdater;
+    // Write-ahead log and snapshots, null for an in-memory address book
+    private ContactStorage storage;
+    // Saved contacts not decoded yet, null once every record is loaded
+    private MappedSnapshot snapshot;
+    // Snapshot records already decoded, or deleted/edited by the log
+    private BitSet snapshotLoaded;
+    private int snapshotPending;
     
     public ContactManager() {
-        this.contacts = new ArrayList<>();
+        this(new IndexedContacts(false));
+    }
+    
+    // Subclasses that store contacts another way pass null, so no indexes are
+    // built, and override every method that reads or changes contacts
+    ContactManager(IndexedContacts indexed) {
+        this.indexed = indexed;
         this.validator = new ValidationUtils();
+        this.indexUpdater = new IndexUpdater();
+    }
+    
+    // Address book persisted in the given directory, restored from earlier runs
+    public ContactManager(Path dataDirectory) throws IOException {
+        this(new ContactStorage(dataDirectory));
+    }
+    
+    // Snapshot contacts are decoded on first use, so lookups by number or exact
+    // name are served before the whole snapshot has been read
+    public ContactManager(ContactStorage storage) throws IOException {
+        this(new IndexedContacts(false), storage);
+    }
+    
+    ContactManager(IndexedContacts indexed, ContactStorage storage) throws IOException {
+        this(indexed);
+        ContactStorage.Recovery recovery = storage.recover();
+        if (recovery.snapshot != null) {
+            snapshot = recovery.snapshot;
+            snapshotLoaded = new BitSet(snapshot.size());
+            snapshotPending = snapshot.size();
+            // New contacts must not reuse ids of saved contacts that are not loaded yet
+            Contact.getIdAllocator().advancePast(snapshot.getIdHighWaterMark());
+            // The log's version of these contacts replaces the snapshot's
+            for (int id : recovery.deleted) {
+                markSnapshotLoaded(snapshot.indexOfId(id));
+            }
+            for (int id : recovery.changed.keySet()) {
+                markSnapshotLoaded(snapshot.indexOfId(id));
+            }
+        }
+        for (Contact contact : recovery.changed.values()) {
+            indexed.contacts.put(contact.getId(), contact);
+            indexContact(contact);
+        }
+        this.storage = storage;
     }
     
     // Add contact with single or multiple numbers
     public boolean addContact(String name, String type, String phoneNumber, boolean allowMultipleNumbers) {
-        // Validate inputs
-        if (!validator.isValidName(name) || 
-            !validator.isValidType(type) || 
-            !validator.isValidPhoneNumber(phoneNumber)) {
-            return false;
+        return tryAddContact(name, type, phoneNumber, allowMultipleNumbers).isSuccess();
+    }
+    
+    // Same as addContact, but says what happened: CONTACT_ADDED, NUMBER_ADDED
+    // to an existing contact, or why the input was rejected
+    public OperationResult tryAddContact(String name, String type, String phoneNumber, boolean allowMultipleNumbers) {
+        // Validate inputs, the phone check also rejects reserved numbers
+        PhoneCheck phone = validator.checkPhone(phoneNumber);
+        OperationResult invalid = firstFailure(name, type, phone);
+        if (invalid != null) {
+            return invalid;
         }
         
-        // Check if number is reserved
-        if (validator.isReservedNumber(phoneNumber)) {
-            System.out.println("Error: " + phoneNumber + " is a reserved emergency number.");
-            return false;
+        return addValidContact(name, ContactType.standardize(type), phone.getCanonical(), allowMultipleNumbers);
+    }
+    
+    // Validation failure of the first invalid field, null if all are valid
+    OperationResult firstFailure(String name, String type, PhoneCheck phone) {
+        OperationResult result = validator.checkName(name);
+        if (result.isSuccess()) {
+            result = validator.checkType(type);
         }
-        
+        if (result.isSuccess()) {
+            result = phone.getResult();
+        }
+        return result.isSuccess() ? null : result;
+    }
+    
+    // Second half of addContact, once the inputs passed validation. The
+    // canonical number is computed once by the caller.
+    OperationResult addValidContact(String name, ContactType type, long numberKey, boolean allowMultipleNumbers) {
         // Check if number already exists
-        if (isNumberExists(phoneNumber)) {
-            System.out.println("Error: This phone number already exists in another contact.");
-            return false;
+        if (isNumberExists(numberKey)) {
+            return OperationResult.NUMBER_EXISTS;
         }
         
         // Check if contact with same name exists (for adding multiple numbers)
         Contact existingContact = findContactByName(name);
         if (existingContact != null && allowMultipleNumbers) {
-            // Add number to existing contact
-            existingContact.addPhoneNumber(phoneNumber);
-            System.out.println("📞 Number added to existing contact: " + existingContact.getName());
-            return true;
+            // Add number to existing contact (indexed through the listener)
+            existingContact.addPhoneNumber(numberKey);
+            checkpoint();
+            return OperationResult.numberAdded(existingContact);
         }
         
         // Create new contact
-        Contact newContact = new Contact(name, type, phoneNumber);
-        contacts.add(newContact);
-        return true;
+        Contact newContact = new Contact(Contact.getIdAllocator().nextId(), name, type, new long[] { numberKey });
+        indexed.contacts.put(newContact.getId(), newContact);
+        indexed.indexNumber(numberKey, newContact);
+        indexed.typeIndex.add(newContact.getId(), type);
+        indexed.indexName(newContact);
+        newContact.setListener(indexUpdater);
+        if (storage != null) {
+            storage.logAdd(newContact);
+            checkpoint();
+        }
+        return OperationResult.contactAdded(newContact);
+    }
+    
+    // Bulk load: rows are validated in parallel, duplicate numbers are caught
+    // with one hash lookup each, and name searches are indexed once at the end.
+    // With mergeSameName a row whose name already exists adds its number to
+    // that contact, like addContact with allowMultipleNumbers. Nothing is printed,
+    // rejected rows are listed in the report.
+    public ImportReport importContacts(Stream<ImportRecord> records, boolean mergeSameName) {
+        ImportReport report = new ImportReport();
+        Map<String, Contact> importedNames = new HashMap<>();
+        List<Contact> imported = new ArrayList<>();
+        
+        Iterator<ImportRecord> rows = records.iterator();
+        List<ImportRecord> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        while (rows.hasNext()) {
+            chunk.add(rows.next());
+            if (chunk.size() == IMPORT_CHUNK_SIZE || !rows.hasNext()) {
+                importChunk(chunk, mergeSameName, importedNames, imported, report);
+                chunk.clear();
+            }
+        }
+        
+        for (Contact contact : imported) {
+            indexed.indexName(contact);
+            contact.setListener(indexUpdater);
+            if (storage != null) {
+                storage.logAdd(contact);
+            }
+        }
+        checkpoint();
+        
+        return report;
+    }
+    
+    private void importChunk(List<ImportRecord> chunk, boolean mergeSameName, Map<String, Contact> importedNames,
+                             List<Contact> imported, ImportReport report) {
+        // Validation and number cleaning do not touch shared state
+        OperationResult[] errors = new OperationResult[chunk.size()];
+        long[] numberKeys = new long[chunk.size()];
+        IntStream.range(0, chunk.size()).parallel().forEach(i -> {
+            ImportRecord record = chunk.get(i);
+            PhoneCheck phone = validator.checkPhone(record.getPhoneNumber());
+            errors[i] = firstFailure(record.getName(), record.getType(), phone);
+            numberKeys[i] = phone.getCanonical();
+        });
+        
+        int valid = 0;
+        for (OperationResult error : errors) {
+            if (error == null) {
+                valid++;
+            }
+        }
+        BlockIdAllocator ids = importIds(valid);
+        
+        for (int i = 0; i < errors.length; i++) {
+            ImportRecord record = chunk.get(i);
+            if (errors[i] != null) {
+                report.reject(record, errors[i]);
+                continue;
+            }
+            
+            loadSnapshotNumber(numberKeys[i]);
+            if (indexed.numberIndex.containsKey(numberKeys[i])) {
+                report.reject(record, OperationResult.NUMBER_EXISTS);
+                continue;
+            }
+            
+            if (mergeSameName) {
+                String key = nameKey(record.getName());
+                Contact existing = importedNames.get(key);
+                if (existing != null) {
+                    // Not indexed yet, so no listener to update the number index
+                    existing.addPhoneNumber(numberKeys[i]);
+                    indexed.indexNumber(numberKeys[i], existing);
+                    report.numberMerged();
+                    continue;
+                }
+                existing = findContactByName(record.getName());
+                if (existing != null) {
+                    existing.addPhoneNumber(numberKeys[i]);
+                    report.numberMerged();
+                    continue;
+                }
+            }
+            
+            Contact contact = new Contact(ids.nextId(), record.getName(),
+                ContactType.standardize(record.getType()), new long[] { numberKeys[i] });
+            indexed.contacts.put(contact.getId(), contact);
+            indexed.indexNumber(numberKeys[i], contact);
+            indexed.typeIndex.add(contact.getId(), contact.getContactType());
+            imported.add(contact);
+            if (mergeSameName) {
+                importedNames.put(nameKey(contact.getName()), contact);
+            }
+            report.contactAdded();
+        }
+    }
+    
+    // Ids come in blocks so an import does not hit the shared counter per row.
+    // Blocks are no larger than the batch, so small imports do not use up
+    // a whole default block of ids.
+    static BlockIdAllocator importIds(int rows) {
+        return new BlockIdAllocator(Contact.getIdAllocator(),
+            Math.max(1, Math.min(BlockIdAllocator.DEFAULT_BLOCK_SIZE, rows)));
     }
     
     // Search by name (partial matching)
     public List<Contact> searchByName(String name, boolean useFuzzy) {
-        List<Contact> results = new ArrayList<>();
+        loadSnapshot();
+        // Standard: Contains matching through the trigram index
+        List<Contact> results = indexed.nameGrams.search(name);
         
-        for (Contact contact : contacts) {
-            if (useFuzzy) {
-                // Bonus: Fuzzy matching
-                if (contact.isNameSimilar(name)) {
+        if (useFuzzy) {
+            // Bonus: Fuzzy matching, contains hits first, then known spelling
+            // variations, then closest spellings by edit distance
+            Set<Contact> seen = new HashSet<>(results);
+            for (Contact contact : indexed.nameVariations.search(name)) {
+                if (seen.add(contact)) {
                     results.add(contact);
                 }
-            } else {
-                // Standard: Contains matching
-                if (contact.containsName(name)) {
+            }
+            for (Contact contact : searchByNameFuzzy(name, DEFAULT_FUZZY_DISTANCE)) {
+                if (seen.add(contact)) {
                     results.add(contact);
                 }
             }
@@ -70,87 +278,547 @@ public class ContactManager {
         return results;
     }
     
-    // Search by number (exact match)
-    public List<Contact> searchByNumber(String number) {
-        List<Contact> results = new ArrayList<>();
+    // The best name matches, best first and at most limit of them: exact names,
+    // then names starting with the query, names with a word starting with it,
+    // names containing it and, with useFuzzy, spelling variations and close
+    // spellings. Only the kept hits are collected, and the weaker kinds are
+    // not searched at all once limit better hits are found.
+    public List<SearchHit> searchRanked(String name, boolean useFuzzy, int limit) {
+        TopHits top = new TopHits(limit);
+        loadSnapshot();
+        String query = nameKey(name);
+        BitSet seen = new BitSet();
+        for (Contact contact : indexed.nameIndex.getOrDefault(query, List.of())) {
+            seen.set(contact.getId());
+            top.offer(contact.getId(), SearchHit.Match.EXACT, 0);
+        }
+        
+        if (!top.isClosedTo(SearchHit.Match.PREFIX)) {
+            indexed.nameGrams.forEachMatch(query, contact -> {
+                if (!seen.get(contact.getId())) {
+                    seen.set(contact.getId());
+                    top.offer(contact.getId(), SearchHit.classify(nameKey(contact.getName()), query), 0);
+                }
+            });
+        }
+        if (useFuzzy && !top.isClosedTo(SearchHit.Match.VARIATION)) {
+            for (Contact contact : indexed.nameVariations.search(query)) {
+                if (!seen.get(contact.getId())) {
+                    seen.set(contact.getId());
+                    top.offer(contact.getId(), SearchHit.Match.VARIATION, 0);
+                }
+            }
+        }
+        if (useFuzzy && !top.isClosedTo(SearchHit.Match.FUZZY)) {
+            for (Map.Entry<Contact, Integer> entry : indexed.fuzzyNames.distances(query, DEFAULT_FUZZY_DISTANCE).entrySet()) {
+                if (!seen.get(entry.getKey().getId())) {
+                    top.offer(entry.getKey().getId(), SearchHit.Match.FUZZY, entry.getValue());
+                }
+            }
+        }
         
-        for (Contact contact : contacts) {
-            if (contact.hasPhoneNumber(number)) {
+        return top.toList(indexed.contacts::get);
+    }
+    
+    // Edit-distance search: every word of the query must be within maxDistance
+    // edits of a word in the name. Results are ranked by total distance.
+    public List<Contact> searchByNameFuzzy(String name, int maxDistance) {
+        loadSnapshot();
+        return indexed.fuzzyNames.search(name, maxDistance);
+    }
+    
+    // All contacts of one type, in id order
+    public List<Contact> searchByType(ContactType type) {
+        loadSnapshot();
+        return contactsOfType(type);
+    }
+    
+    private List<Contact> contactsOfType(ContactType type) {
+        return contactsById(indexed.typeIndex.bits(type));
+    }
+    
+    private List<Contact> contactsById(BitSet ids) {
+        List<Contact> results = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            Contact contact = indexed.contacts.get(id);
+            // Null when deleted by another thread since the ids were collected
+            if (contact != null) {
                 results.add(contact);
             }
         }
+        return results;
+    }
+    
+    // Name contains the term and the type matches: the trigram hits are
+    // filtered with one bit test each instead of scanning every contact
+    public List<Contact> searchByNameAndType(String name, ContactType type) {
+        loadSnapshot();
+        List<Contact> results = indexed.nameGrams.search(name);
+        results.removeIf(contact -> !indexed.typeIndex.contains(type, contact.getId()));
+        return results;
+    }
+    
+    // Combined criteria, see ContactQuery. Only the most selective indexed
+    // part is looked up, everything else is checked on its candidates.
+    public List<Contact> search(ContactQuery query) {
+        loadSnapshot();
+        return QueryPlanner.run(query, queryIndexes);
+    }
+    
+    // How search() would answer the query now, for the slow-query log
+    QueryPlanner.Plan explain(ContactQuery query) {
+        return QueryPlanner.explain(query, queryIndexes);
+    }
+    
+    // Contacts with a number starting with the digits, as displayed ("0599")
+    // or with the country code ("970599"), in id order. Only the numbers in
+    // range are visited, not every contact's list.
+    public List<Contact> searchByNumberPrefix(String prefix) {
+        loadSnapshot();
+        return contactsWithPrefix(PhoneNumbers.digitsOf(prefix == null ? "" : prefix));
+    }
+    
+    // Contacts with a number ending with the digits, in id order
+    public List<Contact> searchByNumberSuffix(String suffix) {
+        loadSnapshot();
+        return contactsWithSuffix(PhoneNumbers.digitsOf(suffix == null ? "" : suffix));
+    }
+    
+    // A contact with several matching numbers is listed once
+    private List<Contact> contactsWithPrefix(String digits) {
+        BitSet ids = new BitSet();
+        indexed.numberPrefixes.forEachWithPrefix(digits, number -> setOwnerId(ids, number));
+        return contactsById(ids);
+    }
+    
+    private List<Contact> contactsWithSuffix(String digits) {
+        BitSet ids = new BitSet();
+        indexed.numberPrefixes.forEachWithSuffix(digits, number -> setOwnerId(ids, number));
+        return contactsById(ids);
+    }
+    
+    private void setOwnerId(BitSet ids, long number) {
+        Contact owner = indexed.numberIndex.get(number);
+        if (owner != null) {
+            ids.set(owner.getId());
+        }
+    }
+    
+    // Search by number (exact match on the normalized number)
+    public List<Contact> searchByNumber(String number) {
+        List<Contact> results = new ArrayList<>();
+        
+        long key = numberKey(number);
+        loadSnapshotNumber(key);
+        Contact owner = indexed.numberIndex.get(key);
+        if (owner != null) {
+            results.add(owner);
+        }
         
         return results;
     }
     
-    // Delete by name (exact match) - deletes all matches
+    // Delete by name (exact match, case insensitive) - deletes all matches
     public int deleteByName(String name) {
-        int deletedCount = 0;
-        Iterator<Contact> iterator = contacts.iterator();
+        loadSnapshotName(name);
+        List<Contact> matches = indexed.nameIndex.remove(nameKey(name));
+        if (matches == null) {
+            return 0;
+        }
         
-        while (iterator.hasNext()) {
-            Contact contact = iterator.next();
-            if (contact.getName().equalsIgnoreCase(name)) {
-                iterator.remove();
-                deletedCount++;
+        for (Contact contact : matches) {
+            // Already removed through one of its numbers by another thread
+            if (indexed.contacts.remove(contact.getId()) == null) {
+                continue;
+            }
+            indexed.unindexNameSearches(contact);
+            detachContact(contact);
+            if (storage != null) {
+                storage.logDelete(contact);
             }
         }
+        checkpoint();
         
-        return deletedCount;
+        return matches.size();
     }
     
-    // Delete by number (exact match)
+    // Delete by number (exact match on the normalized number)
     public boolean deleteByNumber(String number) {
-        boolean deleted = false;
+        long key = numberKey(number);
+        loadSnapshotNumber(key);
+        Contact contact = indexed.numberIndex.get(key);
+        if (contact == null) {
+            return false;
+        }
         
-        for (int i = contacts.size() - 1; i >= 0; i--) {
-            Contact contact = contacts.get(i);
-            if (contact.hasPhoneNumber(number)) {
-                if (contact.getPhoneNumbers().size() > 1) {
-                    // Remove only this number (Bonus feature)
-                    contact.removePhoneNumber(number);
-                    System.out.println("📞 Number removed from contact: " + contact.getName());
-                } else {
-                    // Remove entire contact
-                    contacts.remove(i);
-                }
-                deleted = true;
-                break; // Remove only first match (or modify to remove all)
-            }
+        if (contact.getPhoneNumberCount() > 1) {
+            // Remove only this number (Bonus feature)
+            contact.removePhoneNumber(key);
+        } else {
+            // Remove entire contact
+            removeContact(contact);
         }
+        checkpoint();
         
-        return deleted;
+        return true;
     }
     
     // Get all contacts
     public List<Contact> getAllContacts() {
-        return new ArrayList<>(contacts);
+        loadSnapshot();
+        return new ArrayList<>(indexed.contacts.values());
+    }
+    
+    // One page of contacts in id order: pass null for the first page, then
+    // the previous page's token. Only the page is copied, however large the
+    // address book, and tokens stay valid across adds and deletes.
+    public ContactPage getContactsPage(String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        int from = ContactPage.startId(pageToken);
+        loadSnapshot();
+        // The type bitmaps together hold every stored id
+        List<Contact> page = new ArrayList<>(Math.min(pageSize, indexed.contacts.size()));
+        int id = indexed.typeIndex.nextBit(from);
+        for (; id >= 0 && page.size() < pageSize; id = indexed.typeIndex.nextBit(id + 1)) {
+            Contact contact = indexed.contacts.get(id);
+            if (contact != null) {
+                page.add(contact);
+            }
+        }
+        return new ContactPage(page, id < 0 ? null : ContactPage.token(id));
+    }
+    
+    // All contacts in id order, fetched a page at a time as the stream is
+    // consumed, so nothing the size of the address book is copied
+    public Stream<Contact> streamContacts() {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(new PageIterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
     
     // Helper methods
     private Contact findContactByName(String name) {
-        for (Contact contact : contacts) {
-            if (contact.getName().equalsIgnoreCase(name)) {
-                return contact;
-            }
+        loadSnapshotName(name);
+        List<Contact> matches = indexed.nameIndex.get(nameKey(name));
+        if (matches == null) {
+            return null;
         }
-        return null;
+        // Not get(0), another thread may empty the list meanwhile
+        Iterator<Contact> first = matches.iterator();
+        return first.hasNext() ? first.next() : null;
     }
     
-    private boolean isNumberExists(String number) {
-        for (Contact contact : contacts) {
-            if (contact.hasPhoneNumber(number)) {
-                return true;
-            }
+    private boolean isNumberExists(long numberKey) {
+        loadSnapshotNumber(numberKey);
+        return indexed.numberIndex.containsKey(numberKey);
+    }
+    
+    // Numbers are indexed by their canonical form so "059-912-3456" and "0599123456" collide
+    private long numberKey(String number) {
+        return PhoneNumbers.canonical(number);
+    }
+    
+    private String nameKey(String name) {
+        return NGramIndex.normalize(name);
+    }
+    
+    private void indexContact(Contact contact) {
+        for (long number : contact.getPhoneNumberKeys()) {
+            indexed.indexNumber(number, contact);
+        }
+        indexed.typeIndex.add(contact.getId(), contact.getContactType());
+        indexed.indexName(contact);
+        contact.setListener(indexUpdater);
+    }
+    
+    private void removeContact(Contact contact) {
+        if (indexed.contacts.remove(contact.getId()) == null) {
+            return;
+        }
+        indexed.removeFromNameIndex(contact, contact.getName());
+        indexed.unindexNameSearches(contact);
+        detachContact(contact);
+        if (storage != null) {
+            storage.logDelete(contact);
+        }
+    }
+    
+    // Stops tracking edits and drops the contact's numbers and type from the indexes
+    private void detachContact(Contact contact) {
+        contact.setListener(null);
+        indexed.typeIndex.remove(contact.getId());
+        for (long number : contact.getPhoneNumberKeys()) {
+            indexed.unindexNumber(number, contact);
         }
-        return false;
     }
     
     public int getContactCount() {
-        return contacts.size();
+        return indexed.contacts.size() + snapshotPending;
     }
     
     public void clearAllContacts() {
-        contacts.clear();
+        for (Contact contact : indexed.contacts.values()) {
+            contact.setListener(null);
+        }
+        indexed.clear();
+        dropSnapshot();
+        if (storage != null) {
+            storage.logClear();
+            checkpoint();
+        }
+    }
+    
+    // Compacts the log into a fresh snapshot (no-op for in-memory address books)
+    public void saveSnapshot() throws IOException {
+        if (storage != null) {
+            loadSnapshot();
+            storage.snapshot(indexed.contacts.values());
+        }
+    }
+    
+    // Decodes the snapshot records that may hold this normalized number
+    private void loadSnapshotNumber(long numberKey) {
+        if (snapshot != null) {
+            for (int index : snapshot.indexesOfNumber(numberKey)) {
+                loadSnapshotRecord(index);
+            }
+        }
+    }
+    
+    // Decodes the snapshot records that may have this name
+    private void loadSnapshotName(String name) {
+        if (snapshot != null) {
+            for (int index : snapshot.indexesOfName(name)) {
+                loadSnapshotRecord(index);
+            }
+        }
+    }
+    
+    private void loadSnapshotRecord(int index) {
+        if (markSnapshotLoaded(index)) {
+            Contact contact = snapshot.read(index);
+            indexed.contacts.put(contact.getId(), contact);
+            indexContact(contact);
+        }
+    }
+    
+    private boolean markSnapshotLoaded(int index) {
+        if (index < 0 || snapshotLoaded.get(index)) {
+            return false;
+        }
+        snapshotLoaded.set(index);
+        snapshotPending--;
+        return true;
+    }
+    
+    // Decodes the remaining snapshot records, keeping the saved order
+    private void loadSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+        
+        Map<Integer, Contact> ordered = indexed.newContactMap();
+        for (int index = 0; index < snapshot.size(); index++) {
+            if (snapshotLoaded.get(index)) {
+                // Already decoded, or deleted/rewritten by the log
+                Contact contact = indexed.contacts.remove(snapshot.idAt(index));
+                if (contact != null) {
+                    ordered.put(contact.getId(), contact);
+                }
+            } else {
+                Contact contact = snapshot.read(index);
+                ordered.put(contact.getId(), contact);
+                indexContact(contact);
+            }
+        }
+        // Contacts added after the snapshot follow it
+        ordered.putAll(indexed.contacts);
+        indexed.contacts = ordered;
+        dropSnapshot();
+    }
+    
+    // Lets a subclass wrap the listener that keeps indexes in sync with direct
+    // contact edits, including on contacts already stored
+    void wrapIndexUpdater(UnaryOperator<ContactListener> wrapper) {
+        indexUpdater = wrapper.apply(indexUpdater);
+        for (Contact contact : indexed.contacts.values()) {
+            contact.setListener(indexUpdater);
+        }
+    }
+    
+    // Once true it stays true, lookups no longer change any state
+    boolean isSnapshotLoaded() {
+        return snapshot == null;
+    }
+    
+    private void dropSnapshot() {
+        snapshot = null;
+        snapshotLoaded = null;
+        snapshotPending = 0;
+    }
+    
+    boolean isSnapshotDue() {
+        return storage != null && storage.isSnapshotDue();
+    }
+    
+    // Periodic compaction, run between operations so a snapshot never sees a
+    // half-applied edit. A subclass running operations in parallel may defer it.
+    void checkpoint() {
+        if (storage != null && storage.isSnapshotDue()) {
+            try {
+                loadSnapshot();
+                storage.snapshot(indexed.contacts.values());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    // Takes a final snapshot so the next start does not replay the log
+    @Override
+    public void close() throws IOException {
+        if (storage != null) {
+            saveSnapshot();
+            storage.close();
+            storage = null;
+        }
+    }
+    
+    // Walks getContactsPage, so subclasses that override it (locking, other
+    // storage) stream correctly too
+    private class PageIterator implements Iterator<Contact> {
+        private ContactPage page;
+        private int index;
+        
+        @Override
+        public boolean hasNext() {
+            while (page == null || index == page.getContacts().size()) {
+                if (page != null && !page.hasNext()) {
+                    return false;
+                }
+                page = getContactsPage(page == null ? null : page.getNextPageToken(), STREAM_PAGE_SIZE);
+                index = 0;
+            }
+            return true;
+        }
+        
+        @Override
+        public Contact next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.getContacts().get(index++);
+        }
+    }
+    
+    // The indexes as seen by the QueryPlanner, once the snapshot is loaded
+    private class QueryIndexes implements ContactIndexes {
+        @Override
+        public int size() {
+            return indexed.contacts.size();
+        }
+        
+        @Override
+        public int estimate(ContactQuery leaf) {
+            return switch (leaf.kind()) {
+                case NAME_CONTAINS -> indexed.nameGrams.estimate(leaf.text());
+                case NAME_EQUALS -> {
+                    List<Contact> matches = indexed.nameIndex.get(leaf.text());
+                    yield matches == null ? 0 : matches.size();
+                }
+                case NUMBER_EQUALS -> indexed.numberIndex.containsKey(leaf.number()) ? 1 : 0;
+                case NUMBER_PREFIX -> indexed.numberPrefixes.countWithPrefix(leaf.text());
+                case NUMBER_SUFFIX -> indexed.numberPrefixes.countWithSuffix(leaf.text());
+                case TYPE -> indexed.typeIndex.count(leaf.type());
+                default -> NO_INDEX;
+            };
+        }
+        
+        @Override
+        public List<Contact> lookup(ContactQuery leaf) {
+            switch (leaf.kind()) {
+                case NAME_CONTAINS -> {
+                    return indexed.nameGrams.search(leaf.text());
+                }
+                case NAME_EQUALS -> {
+                    List<Contact> matches = new ArrayList<>(indexed.nameIndex.getOrDefault(leaf.text(), List.of()));
+                    matches.sort(Comparator.comparingInt(Contact::getId));
+                    return matches;
+                }
+                case NUMBER_EQUALS -> {
+                    Contact owner = indexed.numberIndex.get(leaf.number());
+                    return owner == null ? new ArrayList<>() : new ArrayList<>(List.of(owner));
+                }
+                case NUMBER_PREFIX -> {
+                    return contactsWithPrefix(leaf.text());
+                }
+                case NUMBER_SUFFIX -> {
+                    return contactsWithSuffix(leaf.text());
+                }
+                case TYPE -> {
+                    return contactsOfType(leaf.type());
+                }
+                default -> throw new IllegalArgumentException("No index for " + leaf);
+            }
+        }
+        
+        @Override
+        public Iterable<Contact> scan() {
+            return indexed.contacts.values();
+        }
+    }
+    
+    // Keeps the indexes in sync when a stored contact is edited directly. With
+    // thread-safe indexes another thread may delete the contact while its edit
+    // waits for a lock, then the edit is not indexed, as if the contact had no listener.
+    private class IndexUpdater implements ContactListener {
+        @Override
+        public boolean onNumberAdding(Contact contact, long number) {
+            if (!indexed.isStored(contact)) {
+                return true;
+            }
+            loadSnapshotNumber(number);
+            if (indexed.numberIndex.containsKey(number)) {
+                return false;
+            }
+            indexed.indexNumber(number, contact);
+            if (storage != null) {
+                storage.logAddNumber(contact, number);
+            }
+            return true;
+        }
+        
+        @Override
+        public void onNumberRemoved(Contact contact, long number) {
+            indexed.unindexNumber(number, contact);
+            if (storage != null) {
+                storage.logRemoveNumber(contact, number);
+            }
+        }
+        
+        @Override
+        public void onNameChanged(Contact contact, String oldName) {
+            indexed.removeFromNameIndex(contact, oldName);
+            indexed.unindexNameSearches(contact);
+            if (!indexed.isStored(contact)) {
+                return;
+            }
+            indexed.indexName(contact);
+            if (storage != null) {
+                storage.logRename(contact);
+            }
+        }
+        
+        @Override
+        public void onTypeChanged(Contact contact) {
+            if (!indexed.isStored(contact)) {
+                return;
+            }
+            indexed.typeIndex.update(contact.getId(), contact.getContactType());
+            if (storage != null) {
+                storage.logTypeChange(contact);
+            }
+        }
     }
 }
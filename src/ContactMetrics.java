@@ -0,0 +1,174 @@
+package com.ucas.addressbook;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Latency histograms and counters per ContactManager and SearchEngine
+// operation, filled in by InstrumentedContactManager and
+// InstrumentedSearchEngine and read through JMX or getReport().
+//
+// Each operation keeps calls, hits (calls that found or changed something),
+// a latency histogram in nanoseconds and a histogram of result sizes.
+// Recording never locks or allocates, and when disabled the instrumented
+// classes call straight through without reading the clock.
+public class ContactMetrics implements ContactMetricsMBean {
+    public enum Operation {
+        ADD("tryAddContact"),
+        IMPORT("importContacts"),
+        SEARCH_NAME("searchByName"),
+        SEARCH_RANKED("searchRanked"),
+        SEARCH_FUZZY("searchByNameFuzzy"),
+        SEARCH_TYPE("searchByType"),
+        SEARCH_NAME_AND_TYPE("searchByNameAndType"),
+        SEARCH_QUERY("search"),
+        SEARCH_NUMBER("searchByNumber"),
+        SEARCH_NUMBER_PREFIX("searchByNumberPrefix"),
+        SEARCH_NUMBER_SUFFIX("searchByNumberSuffix"),
+        DELETE_NAME("deleteByName"),
+        DELETE_NUMBER("deleteByNumber"),
+        LIST_ALL("getAllContacts"),
+        LIST_PAGE("getContactsPage"),
+        ENGINE_NAME_CONTAINS("engine.searchByNameContains"),
+        ENGINE_QUERY("engine.search"),
+        ENGINE_NAME_FUZZY("engine.searchByNameFuzzy"),
+        ENGINE_NUMBER("engine.searchByNumberExact"),
+        ENGINE_TYPE("engine.searchByType");
+        
+        private final String methodName;
+        
+        Operation(String methodName) {
+            this.methodName = methodName;
+        }
+        
+        public String getMethodName() { return methodName; }
+        
+        // By method name, null if there is no such operation
+        public static Operation parse(String methodName) {
+            for (Operation operation : values()) {
+                if (operation.methodName.equalsIgnoreCase(methodName)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+    
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+    private volatile boolean enabled;
+    private volatile long resetAt = System.nanoTime();
+    
+    public ContactMetrics() {
+        this(true);
+    }
+    
+    public ContactMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    // One finished call and the number of contacts it found or changed
+    public void record(Operation operation, long elapsedNanos, int results) {
+        Stats target = stats.get(operation);
+        target.latency.record(elapsedNanos);
+        target.results.record(results);
+        if (results > 0) {
+            target.hits.increment();
+        }
+    }
+    
+    @Override
+    public long getCalls(String operation) {
+        return stats(operation).latency.count();
+    }
+    
+    @Override
+    public long getHits(String operation) {
+        return stats(operation).hits.sum();
+    }
+    
+    @Override
+    public double getLatencyMicros(String operation, double percentile) {
+        return stats(operation).latency.percentile(percentile) / 1000.0;
+    }
+    
+    public long getCalls(Operation operation) {
+        return stats.get(operation).latency.count();
+    }
+    
+    public long getHits(Operation operation) {
+        return stats.get(operation).hits.sum();
+    }
+    
+    public double getLatencyMicros(Operation operation, double percentile) {
+        return stats.get(operation).latency.percentile(percentile) / 1000.0;
+    }
+    
+    @Override
+    public void reset() {
+        for (Stats target : stats.values()) {
+            target.latency.reset();
+            target.results.reset();
+            target.hits.reset();
+        }
+        resetAt = System.nanoTime();
+    }
+    
+    // Operations with at least one call, latencies in microseconds
+    @Override
+    public String getReport() {
+        double seconds = Math.max((System.nanoTime() - resetAt) / 1e9, 1e-9);
+        StringBuilder sb = new StringBuilder(String.format("%-30s %9s %9s %6s %10s %10s %10s %10s %9s %9s%n",
+            "operation", "calls", "calls/s", "hit%", "p50 us", "p90 us", "p99 us", "max us", "avg size", "p99 size"));
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Stats target = entry.getValue();
+            long calls = target.latency.count();
+            if (calls == 0) {
+                continue;
+            }
+            sb.append(String.format("%-30s %9d %9.1f %6.1f %10.1f %10.1f %10.1f %10.1f %9.1f %9d%n",
+                entry.getKey().getMethodName(), calls, calls / seconds, 100.0 * target.hits.sum() / calls,
+                target.latency.percentile(50) / 1000.0, target.latency.percentile(90) / 1000.0,
+                target.latency.percentile(99) / 1000.0, target.latency.max() / 1000.0,
+                target.results.mean(), target.results.percentile(99)));
+        }
+        return sb.toString();
+    }
+    
+    // Registers with the platform MBean server as
+    // com.ucas.addressbook:type=ContactMetrics,name=<name>
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.ucas.addressbook:type=ContactMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+    
+    private Stats stats(String operation) {
+        Operation parsed = Operation.parse(operation);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+        return stats.get(parsed);
+    }
+    
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram results = new LatencyHistogram();
+        final LongAdder hits = new LongAdder();
+    }
+}
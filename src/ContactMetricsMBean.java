@@ -0,0 +1,22 @@
+package com.ucas.addressbook;
+
+// JMX view of ContactMetrics, e.g. in JConsole under com.ucas.addressbook.
+// Operations are named like the methods they measure, e.g. "searchByName".
+public interface ContactMetricsMBean {
+    boolean isEnabled();
+    
+    void setEnabled(boolean enabled);
+    
+    // Table of every operation called since the last reset
+    String getReport();
+    
+    long getCalls(String operation);
+    
+    // Calls that found or changed something
+    long getHits(String operation);
+    
+    // Latency percentile (0-100) in microseconds
+    double getLatencyMicros(String operation, double percentile);
+    
+    void reset();
+}
@@ -0,0 +1,44 @@
+package com.ucas.addressbook;
+
+import java.util.Collections;
+import java.util.List;
+
+// One page of ContactManager.getContactsPage, in id order. The token points
+// at an id rather than a position, so it stays valid while contacts are
+// added or deleted: no contact is listed twice and new ones show up on a
+// later page.
+public final class ContactPage {
+    private final List<Contact> contacts;
+    private final String nextPageToken;
+    
+    ContactPage(List<Contact> contacts, String nextPageToken) {
+        this.contacts = Collections.unmodifiableList(contacts);
+        this.nextPageToken = nextPageToken;
+    }
+    
+    public List<Contact> getContacts() { return contacts; }
+    public boolean hasNext() { return nextPageToken != null; }
+    // Null on the last page
+    public String getNextPageToken() { return nextPageToken; }
+    
+    // The token is the first id of the next page, in base 36
+    static String token(int nextId) {
+        return Integer.toString(nextId, 36);
+    }
+    
+    // First id of the page the token points at, 0 for the first page (null token)
+    static int startId(String token) {
+        if (token == null) {
+            return 0;
+        }
+        try {
+            int id = Integer.parseInt(token, 36);
+            if (id >= 0) {
+                return id;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid page token: " + token);
+    }
+}
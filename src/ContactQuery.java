@@ -0,0 +1,219 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable search criteria, built from predicates and combined with
+// and/or/not, e.g.
+//   ContactQuery.type(ContactType.FAMILY).and(ContactQuery.nameContains("ali")).limit(20)
+// ContactManager.search hands it to the QueryPlanner, which answers the most
+// selective indexed part first and checks the rest on those candidates only.
+public final class ContactQuery {
+    enum Kind { NAME_CONTAINS, NAME_EQUALS, NUMBER_EQUALS, NUMBER_PREFIX, NUMBER_SUFFIX, TYPE, AND, OR, NOT }
+    
+    private final Kind kind;
+    // Lower-cased name term, or the digits of a number prefix or suffix
+    private final String text;
+    private final long number;
+    private final ContactType type;
+    private final List<ContactQuery> operands;
+    private final int offset;
+    private final int limit;
+    
+    private ContactQuery(Kind kind, String text, long number, ContactType type, List<ContactQuery> operands,
+                         int offset, int limit) {
+        this.kind = kind;
+        this.text = text;
+        this.number = number;
+        this.type = type;
+        this.operands = operands;
+        this.offset = offset;
+        this.limit = limit;
+    }
+    
+    private static ContactQuery leaf(Kind kind, String text, long number, ContactType type) {
+        return new ContactQuery(kind, text, number, type, Collections.emptyList(), 0, Integer.MAX_VALUE);
+    }
+    
+    // Name contains the term, case insensitive
+    public static ContactQuery nameContains(String term) {
+        return leaf(Kind.NAME_CONTAINS, NGramIndex.normalize(term), 0, null);
+    }
+    
+    // Whole name equals, case insensitive
+    public static ContactQuery nameEquals(String name) {
+        return leaf(Kind.NAME_EQUALS, NGramIndex.normalize(name), 0, null);
+    }
+    
+    // Has the number, formatting ignored like searchByNumber
+    public static ContactQuery number(String number) {
+        return leaf(Kind.NUMBER_EQUALS, null, PhoneNumbers.canonical(number), null);
+    }
+    
+    // Has a number starting with the digits, as displayed ("0599") or with
+    // the country code ("970599")
+    public static ContactQuery numberPrefix(String prefix) {
+        return leaf(Kind.NUMBER_PREFIX, prefix == null ? "" : PhoneNumbers.digitsOf(prefix), 0, null);
+    }
+    
+    // Has a number ending with the digits, e.g. the last four
+    public static ContactQuery numberSuffix(String suffix) {
+        return leaf(Kind.NUMBER_SUFFIX, suffix == null ? "" : PhoneNumbers.digitsOf(suffix), 0, null);
+    }
+    
+    public static ContactQuery type(ContactType type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Type must not be null");
+        }
+        return leaf(Kind.TYPE, null, 0, type);
+    }
+    
+    // Combining keeps only the criteria, offset and limit of the operands are dropped
+    public ContactQuery and(ContactQuery other) {
+        return combine(Kind.AND, other);
+    }
+    
+    public ContactQuery or(ContactQuery other) {
+        return combine(Kind.OR, other);
+    }
+    
+    public ContactQuery not() {
+        if (kind == Kind.NOT) {
+            return operands.get(0);
+        }
+        return new ContactQuery(Kind.NOT, null, 0, null, List.of(criteria()), 0, Integer.MAX_VALUE);
+    }
+    
+    // Skips the first matches, in id order
+    public ContactQuery offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        return new ContactQuery(kind, text, number, type, operands, offset, limit);
+    }
+    
+    // Returns at most this many matches
+    public ContactQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        return new ContactQuery(kind, text, number, type, operands, offset, limit);
+    }
+    
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+    
+    Kind kind() { return kind; }
+    String text() { return text; }
+    long number() { return number; }
+    ContactType type() { return type; }
+    List<ContactQuery> operands() { return operands; }
+    
+    // Checks the criteria on one contact, ignoring offset and limit
+    public boolean matches(Contact contact) {
+        return switch (kind) {
+            case NAME_CONTAINS -> NGramIndex.normalize(contact.getName()).contains(text);
+            case NAME_EQUALS -> NGramIndex.normalize(contact.getName()).equals(text);
+            case NUMBER_EQUALS -> contact.hasPhoneNumber(number);
+            case NUMBER_PREFIX -> hasNumberPrefix(contact);
+            case NUMBER_SUFFIX -> hasNumberSuffix(contact);
+            case TYPE -> contact.getContactType() == type;
+            case AND -> allMatch(contact);
+            case OR -> anyMatch(contact);
+            case NOT -> !operands.get(0).matches(contact);
+        };
+    }
+    
+    private boolean hasNumberPrefix(Contact contact) {
+        for (long key : contact.getPhoneNumberKeys()) {
+            if (PhoneNumbers.format(key).startsWith(text) || PhoneNumbers.digits(key).startsWith(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean hasNumberSuffix(Contact contact) {
+        for (long key : contact.getPhoneNumberKeys()) {
+            if (PhoneNumbers.digits(key).endsWith(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean allMatch(Contact contact) {
+        for (ContactQuery operand : operands) {
+            if (!operand.matches(contact)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean anyMatch(Contact contact) {
+        for (ContactQuery operand : operands) {
+            if (operand.matches(contact)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // a.and(b).and(c) becomes one AND of three operands
+    private ContactQuery combine(Kind combined, ContactQuery other) {
+        List<ContactQuery> parts = new ArrayList<>();
+        for (ContactQuery query : List.of(this.criteria(), other.criteria())) {
+            if (query.kind == combined) {
+                parts.addAll(query.operands);
+            } else {
+                parts.add(query);
+            }
+        }
+        return new ContactQuery(combined, null, 0, null, List.copyOf(parts), 0, Integer.MAX_VALUE);
+    }
+    
+    private ContactQuery criteria() {
+        if (offset == 0 && limit == Integer.MAX_VALUE) {
+            return this;
+        }
+        return new ContactQuery(kind, text, number, type, operands, 0, Integer.MAX_VALUE);
+    }
+    
+    // Readable form for logs, e.g. (type=Family AND name~"ali") limit 20
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(criteriaString());
+        if (offset > 0) {
+            sb.append(" offset ").append(offset);
+        }
+        if (limit != Integer.MAX_VALUE) {
+            sb.append(" limit ").append(limit);
+        }
+        return sb.toString();
+    }
+    
+    // Criteria only, without offset and limit
+    String criteriaString() {
+        return switch (kind) {
+            case NAME_CONTAINS -> "name~\"" + text + "\"";
+            case NAME_EQUALS -> "name=\"" + text + "\"";
+            case NUMBER_EQUALS -> "number=" + (number == PhoneNumbers.INVALID ? "invalid" : PhoneNumbers.format(number));
+            case NUMBER_PREFIX -> "number^" + text;
+            case NUMBER_SUFFIX -> "number$" + text;
+            case TYPE -> "type=" + type;
+            case NOT -> "NOT " + operands.get(0).criteriaString();
+            case AND, OR -> {
+                StringBuilder sb = new StringBuilder("(");
+                for (int i = 0; i < operands.size(); i++) {
+                    if (i > 0) {
+                        sb.append(' ').append(kind).append(' ');
+                    }
+                    sb.append(operands.get(i).criteriaString());
+                }
+                yield sb.append(')').toString();
+            }
+        };
+    }
+}
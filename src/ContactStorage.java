@@ -0,0 +1,352 @@
+package com.ucas.addressbook;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+// Persistence for ContactManager: an append-only operation log plus periodic
+// snapshots. Recovery maps the latest snapshot (see MappedSnapshot) and replays
+// only the log records written after it, so restart time follows the snapshot
+// size and snapshot contacts are decoded only when first used.
+//
+// Log header:  int magic "ABLG" | int version
+// Log record:  int length | long sequence | byte op | payload | int crc32
+// Phone numbers are written as their canonical long (see PhoneNumbers).
+// A torn record at the end of the log (crash mid-write) is dropped on recovery.
+// Appends and snapshots are synchronized, so threads may log concurrently.
+public class ContactStorage implements Closeable {
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 10_000;
+    
+    static final String LOG_FILE = "contacts.log";
+    static final String SNAPSHOT_FILE = "contacts.snapshot";
+    
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    private static final int LOG_MAGIC = 0x41424C47; // "ABLG"
+    // Version 1 was the log without a header, with numbers as strings
+    private static final int LOG_VERSION = 2;
+    private static final int LOG_HEADER_SIZE = 8;
+    
+    private static final byte OP_ADD = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_ADD_NUMBER = 3;
+    private static final byte OP_REMOVE_NUMBER = 4;
+    private static final byte OP_RENAME = 5;
+    private static final byte OP_SET_TYPE = 6;
+    private static final byte OP_CLEAR = 7;
+    
+    private final Path directory;
+    private final int snapshotInterval;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(128);
+    private final DataOutputStream record = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+    
+    private DataOutputStream log;
+    private long sequence;
+    private int recordsSinceSnapshot;
+    
+    public ContactStorage(Path directory) {
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+    
+    public ContactStorage(Path directory, int snapshotInterval) {
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+    }
+    
+    // Maps the snapshot, replays newer log records and opens the log for appending
+    Recovery recover() throws IOException {
+        Files.createDirectories(directory);
+        
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        MappedSnapshot snapshot = Files.exists(snapshotPath) ? MappedSnapshot.open(snapshotPath) : null;
+        Recovery recovery = new Recovery(snapshot);
+        long snapshotSequence = snapshot == null ? 0 : snapshot.getSequence();
+        sequence = snapshotSequence;
+        long validLength = replayLog(recovery, snapshotSequence);
+        
+        // Drop a torn tail so new records are appended after the last good one
+        Path logPath = directory.resolve(LOG_FILE);
+        if (Files.exists(logPath) && Files.size(logPath) > validLength) {
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        openLog(false);
+        
+        return recovery;
+    }
+    
+    synchronized void logAdd(Contact contact) {
+        try {
+            begin(OP_ADD, contact.getId());
+            writeContact(record, contact);
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    void logDelete(Contact contact) {
+        logValue(OP_DELETE, contact.getId(), null);
+    }
+    
+    void logAddNumber(Contact contact, long number) {
+        logNumber(OP_ADD_NUMBER, contact.getId(), number);
+    }
+    
+    void logRemoveNumber(Contact contact, long number) {
+        logNumber(OP_REMOVE_NUMBER, contact.getId(), number);
+    }
+    
+    void logRename(Contact contact) {
+        logValue(OP_RENAME, contact.getId(), contact.getName());
+    }
+    
+    void logTypeChange(Contact contact) {
+        logValue(OP_SET_TYPE, contact.getId(), contact.getType());
+    }
+    
+    void logClear() {
+        logValue(OP_CLEAR, 0, null);
+    }
+    
+    // Writes a compacted snapshot of the given contacts and starts a fresh log
+    synchronized void snapshot(Collection<Contact> contacts) throws IOException {
+        Path target = directory.resolve(SNAPSHOT_FILE);
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        
+        MappedSnapshot.write(temp, sequence, Contact.getIdAllocator().highWaterMark(), contacts);
+        forceToDisk(temp);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        // Records up to the snapshot sequence are skipped on replay, so a crash
+        // before this truncation is harmless
+        openLog(true);
+        recordsSinceSnapshot = 0;
+    }
+    
+    // True once enough records were logged that replaying them costs more than a snapshot
+    synchronized boolean isSnapshotDue() {
+        return recordsSinceSnapshot >= snapshotInterval;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+    
+    private synchronized void logValue(byte op, int contactId, String value) {
+        try {
+            begin(op, contactId);
+            if (value != null) {
+                record.writeUTF(value);
+            }
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private synchronized void logNumber(byte op, int contactId, long number) {
+        try {
+            begin(op, contactId);
+            record.writeLong(number);
+            commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void begin(byte op, int contactId) throws IOException {
+        if (log == null) {
+            throw new IOException("Contact storage is not open");
+        }
+        recordBuffer.reset();
+        record.writeLong(++sequence);
+        record.writeByte(op);
+        record.writeInt(contactId);
+    }
+    
+    private void commit() throws IOException {
+        crc.reset();
+        crc.update(recordBuffer.toByteArray());
+        log.writeInt(recordBuffer.size());
+        recordBuffer.writeTo(log);
+        log.writeInt((int) crc.getValue());
+        log.flush();
+        recordsSinceSnapshot++;
+    }
+    
+    private void openLog(boolean truncate) throws IOException {
+        close();
+        Path path = directory.resolve(LOG_FILE);
+        boolean empty = truncate || !Files.exists(path) || Files.size(path) == 0;
+        OutputStream out = truncate
+            ? Files.newOutputStream(path)
+            : Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log = new DataOutputStream(new BufferedOutputStream(out));
+        if (empty) {
+            log.writeInt(LOG_MAGIC);
+            log.writeInt(LOG_VERSION);
+            log.flush();
+        }
+    }
+    
+    // Returns the length of the valid prefix of the log
+    private long replayLog(Recovery recovery, long snapshotSequence) throws IOException {
+        Path path = directory.resolve(LOG_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        
+        long validLength = LOG_HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            try {
+                if (in.readInt() != LOG_MAGIC) {
+                    throw new IOException("Not a contact log, or one from before log versions: " + path);
+                }
+                int version = in.readInt();
+                if (version != LOG_VERSION) {
+                    throw new IOException("Unsupported contact log version " + version + ", expected " + LOG_VERSION
+                        + ": " + path);
+                }
+            } catch (EOFException e) {
+                // Torn header, the log is rewritten from scratch
+                return 0;
+            }
+            while (true) {
+                byte[] body;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                validLength += 8 + body.length;
+                
+                DataInputStream entry = new DataInputStream(new ByteArrayInputStream(body));
+                long recordSequence = entry.readLong();
+                sequence = Math.max(sequence, recordSequence);
+                if (recordSequence > snapshotSequence) {
+                    apply(recovery, entry);
+                }
+            }
+        }
+        return validLength;
+    }
+    
+    private void apply(Recovery recovery, DataInputStream entry) throws IOException {
+        byte op = entry.readByte();
+        int id = entry.readInt();
+        Contact contact = recovery.get(id);
+        
+        switch (op) {
+            case OP_ADD -> recovery.changed.put(id, readContact(entry, id));
+            case OP_DELETE -> recovery.delete(id);
+            case OP_ADD_NUMBER -> { if (contact != null) contact.addPhoneNumber(entry.readLong()); }
+            case OP_REMOVE_NUMBER -> { if (contact != null) contact.removePhoneNumber(entry.readLong()); }
+            case OP_RENAME -> { if (contact != null) contact.setName(entry.readUTF()); }
+            case OP_SET_TYPE -> { if (contact != null) contact.setType(entry.readUTF()); }
+            case OP_CLEAR -> recovery.clear();
+            default -> throw new IOException("Unknown log operation " + op);
+        }
+    }
+    
+    private static void writeContact(DataOutputStream out, Contact contact) throws IOException {
+        out.writeUTF(contact.getName());
+        out.writeUTF(contact.getType());
+        long[] numbers = contact.getPhoneNumberKeys();
+        out.writeInt(numbers.length);
+        for (long number : numbers) {
+            out.writeLong(number);
+        }
+    }
+    
+    private static Contact readContact(DataInputStream in, int id) throws IOException {
+        String name = in.readUTF();
+        ContactType type = ContactType.standardize(in.readUTF());
+        int count = in.readInt();
+        long[] numbers = new long[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = in.readLong();
+        }
+        return new Contact(id, name, type, numbers);
+    }
+    
+    private static void forceToDisk(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+    
+    // What recover() found: the mapped snapshot, left undecoded, and the
+    // contacts that log records after it added or edited
+    static final class Recovery {
+        // Null if there is none or the log cleared the address book after it
+        MappedSnapshot snapshot;
+        // Contacts added or edited since the snapshot, in log order
+        final Map<Integer, Contact> changed = new LinkedHashMap<>();
+        // Snapshot contacts deleted since the snapshot
+        final Set<Integer> deleted = new HashSet<>();
+        
+        private Recovery(MappedSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+        
+        // Decodes a snapshot contact the first time a log record touches it
+        private Contact get(int id) {
+            Contact contact = changed.get(id);
+            if (contact == null && snapshot != null && !deleted.contains(id)) {
+                int index = snapshot.indexOfId(id);
+                if (index >= 0) {
+                    contact = snapshot.read(index);
+                    changed.put(id, contact);
+                }
+            }
+            return contact;
+        }
+        
+        private void delete(int id) {
+            changed.remove(id);
+            deleted.add(id);
+        }
+        
+        private void clear() {
+            snapshot = null;
+            changed.clear();
+            deleted.clear();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.ucas.addressbook;
+
+// The allowed contact types. Contacts store the constant, so comparing types
+// is an identity check and indexes can use the ordinal.
+public enum ContactType {
+    FAMILY("Family"),
+    PERSONAL("Personal"),
+    WORK("Work"),
+    OTHER("Other");
+    
+    // values() copies the array on every call
+    private static final ContactType[] VALUES = values();
+    
+    private final String displayName;
+    
+    ContactType(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() { return displayName; }
+    
+    // Case-insensitive, surrounding spaces ignored; null for anything else
+    public static ContactType parse(String type) {
+        if (type == null) {
+            return null;
+        }
+        String trimmed = type.trim();
+        for (ContactType value : VALUES) {
+            if (value.displayName.equalsIgnoreCase(trimmed)) {
+                return value;
+            }
+        }
+        return null;
+    }
+    
+    // Like parse, but unknown types become OTHER
+    public static ContactType standardize(String type) {
+        ContactType parsed = parse(type);
+        return parsed == null ? OTHER : parsed;
+    }
+    
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
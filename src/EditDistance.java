@@ -0,0 +1,112 @@
+package com.ucas.addressbook;
+
+// Damerau-Levenshtein edit distance (insert, delete, substitute, transpose).
+// This is the unrestricted variant, which is a true metric and therefore safe
+// to use as the distance of a BK-tree. Takes CharSequences so callers can
+// compare text in place, e.g. a word inside ContactColumns' name arena.
+final class EditDistance {
+    // DP matrix and last-row table reused by every comparison on a thread
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    
+    private EditDistance() {
+    }
+    
+    static int between(CharSequence a, CharSequence b) {
+        // No row can exceed the combined length, so this never stops early
+        return distance(a, b, a.length() + b.length());
+    }
+    
+    // Distance, or max + 1 when the strings are known to be further apart
+    static int within(CharSequence a, CharSequence b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        return distance(a, b, max);
+    }
+    
+    // Whether 1 - edits / longer length reaches threshold. Stops as soon as
+    // more edits than the threshold allows are certain.
+    static boolean isSimilar(String a, String b, double threshold) {
+        int maxLength = Math.max(a.length(), b.length());
+        if (maxLength == 0) return true;
+        // The small epsilon keeps e.g. 0.3 * 10 from rounding down to 2
+        int allowed = (int) Math.floor((1.0 - threshold) * maxLength + 1e-9);
+        return within(a, b, allowed) <= allowed;
+    }
+    
+    private static int distance(CharSequence a, CharSequence b, int max) {
+        int n = a.length();
+        int m = b.length();
+        if (n == 0) return Math.min(m, max + 1);
+        if (m == 0) return Math.min(n, max + 1);
+        
+        Scratch scratch = SCRATCH.get();
+        // Row i of the (n + 2) x (m + 2) matrix starts at i * width
+        int width = m + 2;
+        int[] d = scratch.matrix((n + 2) * width);
+        int[] lastRow = scratch.lastRow;
+        
+        int infinity = n + m;
+        d[0] = infinity;
+        for (int i = 0; i <= n; i++) {
+            d[(i + 1) * width] = infinity;
+            d[(i + 1) * width + 1] = i;
+        }
+        for (int j = 0; j <= m; j++) {
+            d[j + 1] = infinity;
+            d[width + j + 1] = j;
+        }
+        
+        try {
+            for (int i = 1; i <= n; i++) {
+                char ai = a.charAt(i - 1);
+                int row = i * width;
+                int next = row + width;
+                int lastMatchColumn = 0;
+                // Deleting the first i characters of a is always possible
+                int rowMin = i;
+                for (int j = 1; j <= m; j++) {
+                    char bj = b.charAt(j - 1);
+                    int i1 = lastRow[bj];
+                    int j1 = lastMatchColumn;
+                    int cost = 1;
+                    if (ai == bj) {
+                        cost = 0;
+                        lastMatchColumn = j;
+                    }
+                    int best = Math.min(d[row + j] + cost, Math.min(d[next + j] + 1, d[row + j + 1] + 1));
+                    int transpose = d[i1 * width + j1] + (i - i1 - 1) + 1 + (j - j1 - 1);
+                    int value = Math.min(best, transpose);
+                    d[next + j + 1] = value;
+                    rowMin = Math.min(rowMin, value);
+                }
+                lastRow[ai] = i;
+                
+                // Row minima never decrease, so the final distance is past max as well
+                if (rowMin > max) {
+                    return max + 1;
+                }
+            }
+            return Math.min(d[(n + 1) * width + m + 1], max + 1);
+        } finally {
+            // Only characters of a were set, so clearing them leaves the table all zero
+            for (int i = 0; i < n; i++) {
+                lastRow[a.charAt(i)] = 0;
+            }
+        }
+    }
+    
+    private static final class Scratch {
+        // Last row in which each character of a was seen, indexed by the char itself
+        final int[] lastRow = new int[Character.MAX_VALUE + 1];
+        private int[] matrix = new int[0];
+        
+        // Grows to the largest pair compared so far and is then reused
+        int[] matrix(int cells) {
+            if (matrix.length < cells) {
+                matrix = new int[Math.max(cells, matrix.length * 2)];
+            }
+            return matrix;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// BK-tree over the words of lower-cased contact names.
+// A fuzzy query only descends into children whose edge distance is within the
+// allowed number of edits of the query word, so most words are never compared.
+class FuzzyNameIndex {
+    private static final int MIN_REBUILD_SIZE = 64;
+    
+    private Node root;
+    private final Map<String, Node> nodes = new HashMap<>();
+    // Words each contact was indexed under, so removal works after a rename
+    private final Map<Contact, Set<String>> indexedWords = new HashMap<>();
+    // Words whose last contact was removed; they stay in the tree until a rebuild
+    private int emptyNodes;
+    
+    void add(Contact contact) {
+        Set<String> words = words(NGramIndex.normalize(contact.getName()));
+        indexedWords.put(contact, words);
+        for (String word : words) {
+            Node node = nodes.get(word);
+            if (node == null) {
+                node = insert(word);
+            } else if (node.contacts.isEmpty()) {
+                emptyNodes--;
+            }
+            node.contacts.add(contact);
+        }
+    }
+    
+    void remove(Contact contact) {
+        Set<String> words = indexedWords.remove(contact);
+        if (words == null) {
+            return;
+        }
+        for (String word : words) {
+            Node node = nodes.get(word);
+            if (node != null && node.contacts.remove(contact) && node.contacts.isEmpty()) {
+                emptyNodes++;
+            }
+        }
+        if (emptyNodes > MIN_REBUILD_SIZE && emptyNodes > nodes.size() / 2) {
+            rebuild();
+        }
+    }
+    
+    void clear() {
+        root = null;
+        nodes.clear();
+        indexedWords.clear();
+        emptyNodes = 0;
+    }
+    
+    // Contacts matching every query word within maxDistance edits, closest first
+    List<Contact> search(String query, int maxDistance) {
+        Map<Contact, Integer> distances = distances(query, maxDistance);
+        List<Contact> results = new ArrayList<>(distances.keySet());
+        results.sort(Comparator.comparingInt((Contact contact) -> distances.get(contact))
+            .thenComparingInt(Contact::getId));
+        return results;
+    }
+    
+    // Contact -> total edit distance summed over the query words
+    Map<Contact, Integer> distances(String query, int maxDistance) {
+        Map<Contact, Integer> totals = null;
+        
+        for (String word : words(NGramIndex.normalize(query))) {
+            Map<Contact, Integer> matches = new HashMap<>();
+            searchWord(word, allowedDistance(word, maxDistance), matches);
+            
+            if (totals == null) {
+                totals = matches;
+            } else {
+                totals.keySet().retainAll(matches.keySet());
+                for (Map.Entry<Contact, Integer> entry : totals.entrySet()) {
+                    entry.setValue(entry.getValue() + matches.get(entry.getKey()));
+                }
+            }
+            if (totals.isEmpty()) {
+                break;
+            }
+        }
+        
+        return totals == null ? Collections.emptyMap() : totals;
+    }
+    
+    // Short words tolerate fewer edits, otherwise "ali" would match half the book
+    static int allowedDistance(String word, int maxDistance) {
+        if (word.length() <= 2) return 0;
+        if (word.length() <= 4) return Math.min(1, maxDistance);
+        return maxDistance;
+    }
+    
+    private void searchWord(String word, int maxDistance, Map<Contact, Integer> matches) {
+        if (root == null) {
+            return;
+        }
+        
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            // Past farthestChild + maxDistance neither the node nor any child can match
+            int distance = EditDistance.within(node.word, word, node.farthestChild + maxDistance);
+            
+            if (distance <= maxDistance) {
+                for (Contact contact : node.contacts) {
+                    matches.merge(contact, distance, Math::min);
+                }
+            }
+            
+            // Triangle inequality: only children at distance-max..distance+max can match
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    pending.push(child.getValue());
+                }
+            }
+        }
+    }
+    
+    private Node insert(String word) {
+        Node created = new Node(word);
+        nodes.put(word, created);
+        if (root == null) {
+            root = created;
+            return created;
+        }
+        
+        Node node = root;
+        while (true) {
+            int distance = EditDistance.between(node.word, word);
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, created);
+                node.farthestChild = Math.max(node.farthestChild, distance);
+                return created;
+            }
+            node = child;
+        }
+    }
+    
+    private void rebuild() {
+        List<Node> live = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (!node.contacts.isEmpty()) {
+                live.add(node);
+            }
+        }
+        root = null;
+        nodes.clear();
+        emptyNodes = 0;
+        for (Node node : live) {
+            insert(node.word).contacts.addAll(node.contacts);
+        }
+    }
+    
+    // Splits on anything that is not a letter or digit ("al-Walid" -> "al", "walid")
+    static Set<String> words(String name) {
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= name.length(); i++) {
+            boolean wordChar = i < name.length() && Character.isLetterOrDigit(name.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(name.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+    
+    private static class Node {
+        final String word;
+        final Set<Contact> contacts = new HashSet<>();
+        final Map<Integer, Node> children = new HashMap<>();
+        // Largest edge distance in children
+        int farthestChild;
+        
+        Node(String word) {
+            this.word = word;
+        }
+    }
+}
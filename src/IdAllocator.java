@@ -0,0 +1,15 @@
+package com.ucas.addressbook;
+
+// Source of contact ids, see Contact.setIdAllocator
+public interface IdAllocator {
+    int nextId();
+    
+    // Reserves count consecutive ids and returns the first one
+    int reserve(int count);
+    
+    // Makes sure ids up to usedId are never handed out again
+    void advancePast(int usedId);
+    
+    // Highest id handed out or reserved so far
+    int highWaterMark();
+}
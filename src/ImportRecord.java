@@ -0,0 +1,45 @@
+package com.ucas.addressbook;
+
+import java.io.BufferedReader;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// One row of a bulk import, see ContactManager.importContacts
+public class ImportRecord {
+    private final int line;
+    private final String name;
+    private final String type;
+    private final String phoneNumber;
+    
+    public ImportRecord(int line, String name, String type, String phoneNumber) {
+        this.line = line;
+        this.name = name;
+        this.type = type;
+        this.phoneNumber = phoneNumber;
+    }
+    
+    public int getLine() { return line; }
+    public String getName() { return name; }
+    public String getType() { return type; }
+    public String getPhoneNumber() { return phoneNumber; }
+    
+    // Lazily reads "name,type,phone" lines. Blank lines and a "name,type,phone"
+    // header are skipped, missing columns come back as null.
+    public static Stream<ImportRecord> readCsv(BufferedReader reader) {
+        AtomicInteger lineNumber = new AtomicInteger();
+        return reader.lines()
+            .map(text -> parseCsvLine(lineNumber.incrementAndGet(), text))
+            .filter(record -> record != null);
+    }
+    
+    private static ImportRecord parseCsvLine(int line, String text) {
+        if (text.isBlank() || (line == 1 && text.replace(" ", "").equalsIgnoreCase("name,type,phone"))) {
+            return null;
+        }
+        String[] columns = text.split(",", 3);
+        return new ImportRecord(line,
+            columns[0].trim(),
+            columns.length > 1 ? columns[1].trim() : null,
+            columns.length > 2 ? columns[2].trim() : null);
+    }
+}
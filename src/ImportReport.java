@@ -0,0 +1,49 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of ContactManager.importContacts
+public class ImportReport {
+    private int contactsAdded;
+    private int numbersMerged;
+    private final List<Rejection> rejections = new ArrayList<>();
+    
+    void contactAdded() { contactsAdded++; }
+    void numberMerged() { numbersMerged++; }
+    void reject(ImportRecord record, OperationResult reason) { rejections.add(new Rejection(record.getLine(), reason)); }
+    
+    // New contacts created by the import
+    public int getContactsAdded() { return contactsAdded; }
+    // Numbers added to a contact with the same name
+    public int getNumbersMerged() { return numbersMerged; }
+    public List<Rejection> getRejections() { return Collections.unmodifiableList(rejections); }
+    
+    @Override
+    public String toString() {
+        return "Added " + contactsAdded + " contacts, merged " + numbersMerged
+            + " numbers, rejected " + rejections.size() + " rows";
+    }
+    
+    // A row that was not imported and why
+    public static class Rejection {
+        private final int line;
+        private final OperationResult reason;
+        
+        Rejection(int line, OperationResult reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+        
+        public int getLine() { return line; }
+        public OperationResult.Code getCode() { return reason.getCode(); }
+        public OperationResult.Field getField() { return reason.getField(); }
+        public String getReason() { return reason.getMessage(); }
+        
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + reason.getMessage();
+        }
+    }
+}
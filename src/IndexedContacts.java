@@ -0,0 +1,124 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// The Contact objects of a ContactManager and the indexes over them. Kept
+// apart from ContactManager so subclasses that store contacts another way
+// (ColumnarContactManager) or not at all (InstrumentedContactManager) do not
+// build them.
+final class IndexedContacts {
+    // Contact id -> contact, in insertion order (O(1) removal unlike ArrayList).
+    // Replaced when a lazily loaded snapshot is put back in its saved order.
+    Map<Integer, Contact> contacts;
+    // Canonical phone number (see PhoneNumbers) -> owning contact
+    final LongContactMap numberIndex;
+    // Case-folded name -> contacts with that name
+    final Map<String, List<Contact>> nameIndex;
+    // Trigrams of names for "contains" searches
+    final NGramIndex nameGrams;
+    // BK-tree of name words for edit-distance searches
+    final FuzzyNameIndex fuzzyNames;
+    // Canonical spelling ("muhammad" -> "mohamed") -> contacts
+    final VariationIndex nameVariations;
+    // Contact ids by type
+    final TypeIndex typeIndex;
+    // Canonical numbers in digit order, for prefix and suffix searches
+    final NumberPrefixIndex numberPrefixes;
+    // Concurrent maps and locked indexes, see ConcurrentContactManager
+    private final boolean threadSafe;
+    
+    // With threadSafe the indexes can be read and updated from several threads
+    // at once; the caller still orders conflicting writes
+    IndexedContacts(boolean threadSafe) {
+        this.threadSafe = threadSafe;
+        this.contacts = newContactMap();
+        if (threadSafe) {
+            this.numberIndex = new LockedIndexes.Numbers();
+            this.nameIndex = new ConcurrentHashMap<>();
+            this.nameGrams = new LockedIndexes.NameGrams();
+            this.fuzzyNames = new LockedIndexes.FuzzyNames();
+            this.nameVariations = new LockedIndexes.Variations(VariationDictionary.getDefault());
+            this.typeIndex = new LockedIndexes.Types();
+            this.numberPrefixes = new LockedIndexes.NumberPrefixes();
+        } else {
+            this.numberIndex = new LongContactMap();
+            this.nameIndex = new HashMap<>();
+            this.nameGrams = new NGramIndex();
+            this.fuzzyNames = new FuzzyNameIndex();
+            this.nameVariations = new VariationIndex(VariationDictionary.getDefault());
+            this.typeIndex = new TypeIndex();
+            this.numberPrefixes = new NumberPrefixIndex();
+        }
+    }
+    
+    // Concurrent maps list contacts in id order rather than insertion order
+    Map<Integer, Contact> newContactMap() {
+        return threadSafe ? new ConcurrentSkipListMap<>() : new LinkedHashMap<>();
+    }
+    
+    boolean isStored(Contact contact) {
+        return contacts.get(contact.getId()) == contact;
+    }
+    
+    void indexName(Contact contact) {
+        addToNameIndex(contact, contact.getName());
+        nameGrams.add(contact);
+        fuzzyNames.add(contact);
+        nameVariations.add(contact);
+    }
+    
+    // These indexes remember what they stored, so they work with the old name after a rename
+    void unindexNameSearches(Contact contact) {
+        nameGrams.remove(contact);
+        fuzzyNames.remove(contact);
+        nameVariations.remove(contact);
+    }
+    
+    void indexNumber(long number, Contact contact) {
+        numberIndex.put(number, contact);
+        numberPrefixes.add(number);
+    }
+    
+    void unindexNumber(long number, Contact contact) {
+        if (numberIndex.remove(number, contact)) {
+            numberPrefixes.remove(number);
+        }
+    }
+    
+    void addToNameIndex(Contact contact, String name) {
+        nameIndex.compute(NGramIndex.normalize(name), (key, matches) -> {
+            if (matches == null) {
+                matches = threadSafe ? new CopyOnWriteArrayList<>() : new ArrayList<>(1);
+            }
+            matches.add(contact);
+            return matches;
+        });
+    }
+    
+    // Atomic per name, so a thread adding the same name never gets an emptied list
+    void removeFromNameIndex(Contact contact, String name) {
+        nameIndex.computeIfPresent(NGramIndex.normalize(name), (key, matches) -> {
+            matches.remove(contact);
+            return matches.isEmpty() ? null : matches;
+        });
+    }
+    
+    // Listeners of the stored contacts are left to the caller
+    void clear() {
+        contacts.clear();
+        numberIndex.clear();
+        nameIndex.clear();
+        nameGrams.clear();
+        fuzzyNames.clear();
+        nameVariations.clear();
+        typeIndex.clear();
+        numberPrefixes.clear();
+    }
+}
@@ -0,0 +1,258 @@
+package com.ucas.addressbook;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Times every call on another ContactManager (indexed, columnar or
+// concurrent), records it in ContactMetrics and passes calls over the
+// threshold to a SlowQueryLog, e.g.
+//   ContactManager manager = new InstrumentedContactManager(new ContactManager(dir), metrics, slowQueries);
+// Results are those of the wrapped manager, and returned contacts keep
+// updating its indexes when edited. With the metrics disabled and no slow
+// query log each call goes straight through after one volatile read.
+//
+// The plan logged for a slow search is the one the query planner picks for
+// the equivalent ContactQuery, worked out only once the call turned out slow.
+public class InstrumentedContactManager extends ContactManager {
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private final ContactManager target;
+    private final ContactMetrics metrics;
+    // Null when slow calls are not logged
+    private final SlowQueryLog slowQueries;
+    
+    public InstrumentedContactManager(ContactManager target, ContactMetrics metrics) {
+        this(target, metrics, null);
+    }
+    
+    public InstrumentedContactManager(ContactManager target, ContactMetrics metrics, SlowQueryLog slowQueries) {
+        // Every call goes to target, this manager stores no contacts itself
+        super((IndexedContacts) null);
+        this.target = target;
+        this.metrics = metrics;
+        this.slowQueries = slowQueries;
+    }
+    
+    public ContactManager getTarget() { return target; }
+    public ContactMetrics getMetrics() { return metrics; }
+    public SlowQueryLog getSlowQueryLog() { return slowQueries; }
+    
+    @Override
+    public OperationResult tryAddContact(String name, String type, String phoneNumber, boolean allowMultipleNumbers) {
+        long start = start();
+        OperationResult result = target.tryAddContact(name, type, phoneNumber, allowMultipleNumbers);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.ADD, result.isSuccess() ? 1 : 0, null,
+                name, type, phoneNumber, allowMultipleNumbers);
+        }
+        return result;
+    }
+    
+    @Override
+    public ImportReport importContacts(Stream<ImportRecord> records, boolean mergeSameName) {
+        long start = start();
+        ImportReport report = target.importContacts(records, mergeSameName);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.IMPORT, report.getContactsAdded() + report.getNumbersMerged(), null,
+                mergeSameName);
+        }
+        return report;
+    }
+    
+    @Override
+    public List<Contact> searchByName(String name, boolean useFuzzy) {
+        long start = start();
+        List<Contact> results = target.searchByName(name, useFuzzy);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_NAME, results.size(),
+                useFuzzy ? () -> fuzzyPlan(true) : () -> target.explain(ContactQuery.nameContains(name)), name, useFuzzy);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<SearchHit> searchRanked(String name, boolean useFuzzy, int limit) {
+        long start = start();
+        List<SearchHit> results = target.searchRanked(name, useFuzzy, limit);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_RANKED, results.size(), () -> fuzzyPlan(useFuzzy),
+                name, useFuzzy, limit);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNameFuzzy(String name, int maxDistance) {
+        long start = start();
+        List<Contact> results = target.searchByNameFuzzy(name, maxDistance);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_FUZZY, results.size(),
+                () -> new QueryPlanner.Plan("fuzzy name index", -1), name, maxDistance);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByType(ContactType type) {
+        long start = start();
+        List<Contact> results = target.searchByType(type);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_TYPE, results.size(),
+                () -> target.explain(ContactQuery.type(type)), type);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNameAndType(String name, ContactType type) {
+        long start = start();
+        List<Contact> results = target.searchByNameAndType(name, type);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_NAME_AND_TYPE, results.size(),
+                () -> target.explain(ContactQuery.nameContains(name).and(ContactQuery.type(type))), name, type);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> search(ContactQuery query) {
+        long start = start();
+        List<Contact> results = target.search(query);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_QUERY, results.size(), () -> target.explain(query), query);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNumberPrefix(String prefix) {
+        long start = start();
+        List<Contact> results = target.searchByNumberPrefix(prefix);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_NUMBER_PREFIX, results.size(),
+                () -> target.explain(ContactQuery.numberPrefix(prefix)), prefix);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNumberSuffix(String suffix) {
+        long start = start();
+        List<Contact> results = target.searchByNumberSuffix(suffix);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_NUMBER_SUFFIX, results.size(),
+                () -> target.explain(ContactQuery.numberSuffix(suffix)), suffix);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNumber(String number) {
+        long start = start();
+        List<Contact> results = target.searchByNumber(number);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.SEARCH_NUMBER, results.size(),
+                () -> target.explain(ContactQuery.number(number)), number);
+        }
+        return results;
+    }
+    
+    @Override
+    public int deleteByName(String name) {
+        long start = start();
+        int deleted = target.deleteByName(name);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.DELETE_NAME, deleted,
+                () -> target.explain(ContactQuery.nameEquals(name)), name);
+        }
+        return deleted;
+    }
+    
+    @Override
+    public boolean deleteByNumber(String number) {
+        long start = start();
+        boolean deleted = target.deleteByNumber(number);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.DELETE_NUMBER, deleted ? 1 : 0,
+                () -> target.explain(ContactQuery.number(number)), number);
+        }
+        return deleted;
+    }
+    
+    @Override
+    public List<Contact> getAllContacts() {
+        long start = start();
+        List<Contact> results = target.getAllContacts();
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.LIST_ALL, results.size(), null);
+        }
+        return results;
+    }
+    
+    // streamContacts pages through this, so each page is one call
+    @Override
+    public ContactPage getContactsPage(String pageToken, int pageSize) {
+        long start = start();
+        ContactPage page = target.getContactsPage(pageToken, pageSize);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.LIST_PAGE, page.getContacts().size(), null, pageToken, pageSize);
+        }
+        return page;
+    }
+    
+    @Override
+    public int getContactCount() {
+        return target.getContactCount();
+    }
+    
+    @Override
+    public void clearAllContacts() {
+        target.clearAllContacts();
+    }
+    
+    @Override
+    QueryPlanner.Plan explain(ContactQuery query) {
+        return target.explain(query);
+    }
+    
+    @Override
+    public void saveSnapshot() throws IOException {
+        target.saveSnapshot();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+    
+    // System.nanoTime() if anything records this call, NOT_TIMED otherwise
+    private long start() {
+        return metrics.isEnabled() || slowQueries != null ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    // Calls that throw are not recorded; plan is null for calls without one
+    private void finish(long start, ContactMetrics.Operation operation, int results, Supplier<QueryPlanner.Plan> plan,
+                        Object... parameters) {
+        long elapsed = System.nanoTime() - start;
+        if (metrics.isEnabled()) {
+            metrics.record(operation, elapsed, results);
+        }
+        if (slowQueries != null && slowQueries.isSlow(elapsed)) {
+            QueryPlanner.Plan chosen = null;
+            try {
+                chosen = plan == null ? null : plan.get();
+            } catch (RuntimeException e) {
+                // Explaining must never fail the call itself, e.g. for a null type
+            }
+            slowQueries.log(operation.getMethodName(), parameters, elapsed,
+                chosen == null ? -1 : chosen.examined, results, chosen == null ? null : chosen.description);
+        }
+    }
+    
+    // Ranked and fuzzy name searches walk several indexes one after another
+    private static QueryPlanner.Plan fuzzyPlan(boolean useFuzzy) {
+        return new QueryPlanner.Plan(useFuzzy ? "name, variation and fuzzy name indexes" : "name indexes", -1);
+    }
+}
@@ -0,0 +1,107 @@
+package com.ucas.addressbook;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// SearchEngine that records each search in ContactMetrics, under the
+// "engine." operations, and passes searches over the threshold to a
+// SlowQueryLog. The plan logged is a scan or a parallel scan, with the
+// contacts it looked at: all of them, except for a limited query that
+// stopped once its page was full. Disabled metrics without a slow query log
+// cost one volatile read and no allocation.
+public class InstrumentedSearchEngine extends SearchEngine {
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private final ContactMetrics metrics;
+    // Null when slow searches are not logged
+    private final SlowQueryLog slowQueries;
+    
+    public InstrumentedSearchEngine(ContactMetrics metrics) {
+        this(VariationDictionary.getDefault(), metrics, null);
+    }
+    
+    public InstrumentedSearchEngine(VariationDictionary variations, ContactMetrics metrics, SlowQueryLog slowQueries) {
+        this(variations, null, DEFAULT_PARALLEL_THRESHOLD, metrics, slowQueries);
+    }
+    
+    // Parallel mode as in SearchEngine
+    public InstrumentedSearchEngine(VariationDictionary variations, ForkJoinPool pool, int parallelThreshold,
+                                    ContactMetrics metrics, SlowQueryLog slowQueries) {
+        super(variations, pool, parallelThreshold);
+        this.metrics = metrics;
+        this.slowQueries = slowQueries;
+    }
+    
+    public ContactMetrics getMetrics() { return metrics; }
+    public SlowQueryLog getSlowQueryLog() { return slowQueries; }
+    
+    @Override
+    public List<Contact> searchByNameContains(List<Contact> contacts, String searchTerm) {
+        long start = start();
+        List<Contact> results = super.searchByNameContains(contacts, searchTerm);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.ENGINE_NAME_CONTAINS, contacts, null, results, searchTerm);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> search(List<Contact> contacts, ContactQuery query) {
+        long start = start();
+        List<Contact> results = super.search(contacts, query);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.ENGINE_QUERY, contacts, query, results, query);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNameFuzzy(List<Contact> contacts, String searchName) {
+        long start = start();
+        List<Contact> results = super.searchByNameFuzzy(contacts, searchName);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.ENGINE_NAME_FUZZY, contacts, null, results, searchName);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByNumberExact(List<Contact> contacts, String number) {
+        long start = start();
+        List<Contact> results = super.searchByNumberExact(contacts, number);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.ENGINE_NUMBER, contacts, null, results, number);
+        }
+        return results;
+    }
+    
+    @Override
+    public List<Contact> searchByType(List<Contact> contacts, String type) {
+        long start = start();
+        List<Contact> results = super.searchByType(contacts, type);
+        if (start != NOT_TIMED) {
+            finish(start, ContactMetrics.Operation.ENGINE_TYPE, contacts, null, results, type);
+        }
+        return results;
+    }
+    
+    // System.nanoTime() if anything records this search, NOT_TIMED otherwise
+    private long start() {
+        return metrics.isEnabled() || slowQueries != null ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    // Searches that throw are not recorded; query is null for the searches
+    // without one
+    private void finish(long start, ContactMetrics.Operation operation, List<Contact> contacts, ContactQuery query,
+                        List<Contact> results, Object parameter) {
+        long elapsed = System.nanoTime() - start;
+        if (metrics.isEnabled()) {
+            metrics.record(operation, elapsed, results.size());
+        }
+        if (slowQueries != null && slowQueries.isSlow(elapsed)) {
+            QueryPlanner.Plan plan = explain(contacts, query, results);
+            slowQueries.log(operation.getMethodName(), new Object[] { parameter }, elapsed, plan.examined, results.size(),
+                plan.description);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.ucas.addressbook;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+// Thread-safe versions of the ContactManager indexes, used by
+// ConcurrentContactManager. Each index has its own read-write lock, so
+// searches share it and a write only excludes others from the one index it
+// is changing. The number map is split into segments with a lock each.
+final class LockedIndexes {
+    private static final int NUMBER_SEGMENTS = 16;
+    
+    private LockedIndexes() {
+    }
+    
+    static final class NameGrams extends NGramIndex {
+        private final Guard guard = new Guard();
+        
+        @Override
+        void add(Contact contact) {
+            guard.write(() -> { super.add(contact); return null; });
+        }
+        
+        @Override
+        void remove(Contact contact) {
+            guard.write(() -> { super.remove(contact); return null; });
+        }
+        
+        @Override
+        void clear() {
+            guard.write(() -> { super.clear(); return null; });
+        }
+        
+        @Override
+        List<Contact> search(String term) {
+            return guard.read(() -> super.search(term));
+        }
+        
+        @Override
+        void forEachMatch(String term, Consumer<Contact> action) {
+            guard.read(() -> { super.forEachMatch(term, action); return null; });
+        }
+        
+        @Override
+        int estimate(String term) {
+            return guard.read(() -> super.estimate(term));
+        }
+    }
+    
+    static final class FuzzyNames extends FuzzyNameIndex {
+        private final Guard guard = new Guard();
+        
+        @Override
+        void add(Contact contact) {
+            guard.write(() -> { super.add(contact); return null; });
+        }
+        
+        @Override
+        void remove(Contact contact) {
+            guard.write(() -> { super.remove(contact); return null; });
+        }
+        
+        @Override
+        void clear() {
+            guard.write(() -> { super.clear(); return null; });
+        }
+        
+        @Override
+        List<Contact> search(String query, int maxDistance) {
+            return guard.read(() -> super.search(query, maxDistance));
+        }
+        
+        @Override
+        Map<Contact, Integer> distances(String query, int maxDistance) {
+            return guard.read(() -> super.distances(query, maxDistance));
+        }
+    }
+    
+    static final class Variations extends VariationIndex {
+        private final Guard guard = new Guard();
+        
+        Variations(VariationDictionary dictionary) {
+            super(dictionary);
+        }
+        
+        @Override
+        void add(Contact contact) {
+            guard.write(() -> { super.add(contact); return null; });
+        }
+        
+        @Override
+        void remove(Contact contact) {
+            guard.write(() -> { super.remove(contact); return null; });
+        }
+        
+        @Override
+        void clear() {
+            guard.write(() -> { super.clear(); return null; });
+        }
+        
+        @Override
+        List<Contact> search(String query) {
+            return guard.read(() -> super.search(query));
+        }
+    }
+    
+    static final class Types extends TypeIndex {
+        private final Guard guard = new Guard();
+        
+        @Override
+        void add(int bit, ContactType type) {
+            guard.write(() -> { super.add(bit, type); return null; });
+        }
+        
+        @Override
+        void remove(int bit) {
+            guard.write(() -> { super.remove(bit); return null; });
+        }
+        
+        @Override
+        void update(int bit, ContactType type) {
+            guard.write(() -> { super.update(bit, type); return null; });
+        }
+        
+        @Override
+        void clear() {
+            guard.write(() -> { super.clear(); return null; });
+        }
+        
+        @Override
+        boolean contains(ContactType type, int bit) {
+            return guard.read(() -> super.contains(type, bit));
+        }
+        
+        @Override
+        int count(ContactType type) {
+            return guard.read(() -> super.count(type));
+        }
+        
+        @Override
+        int nextBit(int from) {
+            return guard.read(() -> super.nextBit(from));
+        }
+        
+        // A copy, the live bitmap changes under the caller
+        @Override
+        BitSet bits(ContactType type) {
+            return guard.read(() -> (BitSet) super.bits(type).clone());
+        }
+    }
+    
+    static final class NumberPrefixes extends NumberPrefixIndex {
+        private final Guard guard = new Guard();
+        
+        @Override
+        void add(long number) {
+            guard.write(() -> { super.add(number); return null; });
+        }
+        
+        @Override
+        void remove(long number) {
+            guard.write(() -> { super.remove(number); return null; });
+        }
+        
+        @Override
+        void clear() {
+            guard.write(() -> { super.clear(); return null; });
+        }
+        
+        @Override
+        void forEachWithPrefix(String digits, LongConsumer action) {
+            guard.read(() -> { super.forEachWithPrefix(digits, action); return null; });
+        }
+        
+        @Override
+        void forEachWithSuffix(String digits, LongConsumer action) {
+            guard.read(() -> { super.forEachWithSuffix(digits, action); return null; });
+        }
+        
+        @Override
+        int countWithPrefix(String digits) {
+            return guard.read(() -> super.countWithPrefix(digits));
+        }
+        
+        @Override
+        int countWithSuffix(String digits) {
+            return guard.read(() -> super.countWithSuffix(digits));
+        }
+    }
+    
+    // Numbers hash to one of several independent maps, so writes of
+    // different numbers rarely wait for each other
+    static final class Numbers extends LongContactMap {
+        private final LongContactMap[] segments = new LongContactMap[NUMBER_SEGMENTS];
+        private final Guard[] guards = new Guard[NUMBER_SEGMENTS];
+        
+        Numbers() {
+            for (int i = 0; i < NUMBER_SEGMENTS; i++) {
+                segments[i] = new LongContactMap();
+                guards[i] = new Guard();
+            }
+        }
+        
+        @Override
+        int size() {
+            int size = 0;
+            for (int i = 0; i < NUMBER_SEGMENTS; i++) {
+                LongContactMap segment = segments[i];
+                size += guards[i].read(segment::size);
+            }
+            return size;
+        }
+        
+        @Override
+        Contact get(long key) {
+            int i = segmentOf(key);
+            return guards[i].read(() -> segments[i].get(key));
+        }
+        
+        @Override
+        boolean containsKey(long key) {
+            int i = segmentOf(key);
+            return guards[i].read(() -> segments[i].containsKey(key));
+        }
+        
+        @Override
+        Contact put(long key, Contact contact) {
+            int i = segmentOf(key);
+            return guards[i].write(() -> segments[i].put(key, contact));
+        }
+        
+        @Override
+        Contact remove(long key) {
+            int i = segmentOf(key);
+            return guards[i].write(() -> segments[i].remove(key));
+        }
+        
+        @Override
+        boolean remove(long key, Contact contact) {
+            int i = segmentOf(key);
+            return guards[i].write(() -> segments[i].remove(key, contact));
+        }
+        
+        @Override
+        void clear() {
+            for (int i = 0; i < NUMBER_SEGMENTS; i++) {
+                LongContactMap segment = segments[i];
+                guards[i].write(() -> { segment.clear(); return null; });
+            }
+        }
+        
+        // High bits, the segment's own table uses the low ones
+        private static int segmentOf(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 60) & (NUMBER_SEGMENTS - 1);
+        }
+    }
+    
+    private static final class Guard {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        
+        <T> T read(Supplier<T> operation) {
+            lock.readLock().lock();
+            try {
+                return operation.get();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        <T> T write(Supplier<T> operation) {
+            lock.writeLock().lock();
+            try {
+                return operation.get();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
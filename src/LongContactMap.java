@@ -0,0 +1,144 @@
+package com.ucas.addressbook;
+
+import java.util.Arrays;
+
+// Hash map from canonical phone numbers (see PhoneNumbers) to contacts.
+// Keys live unboxed in a long[] with linear probing, so an entry costs a
+// long and a reference instead of a String key, a Long or a HashMap node.
+// Not thread-safe, see LockedIndexes.
+class LongContactMap {
+    // Canonical numbers are never negative, so INVALID marks a free slot
+    private static final long FREE = PhoneNumbers.INVALID;
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[] keys;
+    private Contact[] values;
+    private int size;
+    
+    LongContactMap() {
+        allocate(MIN_CAPACITY);
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    Contact get(long key) {
+        int slot = find(key);
+        return slot < 0 ? null : values[slot];
+    }
+    
+    boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+    
+    // Returns the contact previously stored for the key
+    Contact put(long key, Contact contact) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Not a canonical phone number: " + key);
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                Contact previous = values[slot];
+                values[slot] = contact;
+                return previous;
+            }
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                values[slot] = contact;
+                // Keep the load at most 2/3 so probe runs stay short
+                if (++size * 3 > keys.length * 2) {
+                    rehash(keys.length * 2);
+                }
+                return null;
+            }
+        }
+    }
+    
+    Contact remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        Contact previous = values[slot];
+        delete(slot);
+        return previous;
+    }
+    
+    // Removes the key only while it still maps to the given contact
+    boolean remove(long key, Contact contact) {
+        int slot = find(key);
+        if (slot < 0 || values[slot] != contact) {
+            return false;
+        }
+        delete(slot);
+        return true;
+    }
+    
+    void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+    
+    private int find(long key) {
+        if (key < 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    // Backward-shift deletion: later entries of the probe run move up so
+    // lookups never need tombstones
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry if its home slot is not between the hole and itself
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = FREE;
+        values[hole] = null;
+        size--;
+    }
+    
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Contact[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new Contact[capacity];
+    }
+    
+    // Numbers share long runs of digits, so mix all bits before masking
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,135 @@
+package com.ucas.addressbook;
+
+import java.util.Arrays;
+
+// Hash map from non-negative long keys to int values, laid out like
+// LongContactMap: keys and values in two parallel arrays with linear probing.
+// Used by ContactColumns to map ids, numbers and name hashes to rows.
+// Not thread-safe.
+final class LongIntMap {
+    // Returned by get() for a missing key
+    static final int MISSING = -1;
+    
+    private static final long FREE = -1;
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[] keys;
+    private int[] values;
+    private int size;
+    
+    LongIntMap() {
+        allocate(MIN_CAPACITY);
+    }
+    
+    LongIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (expectedSize * 3 > capacity * 2) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    int get(long key) {
+        int slot = find(key);
+        return slot < 0 ? MISSING : values[slot];
+    }
+    
+    boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+    
+    void put(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                values[slot] = value;
+                // Keep the load at most 2/3 so probe runs stay short
+                if (++size * 3 > keys.length * 2) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            }
+        }
+    }
+    
+    void remove(long key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+    
+    void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+    
+    private int find(long key) {
+        if (key < 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    // Backward-shift deletion, see LongContactMap
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = FREE;
+        size--;
+    }
+    
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,241 @@
+package com.ucas.addressbook;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// Read-only binary snapshot of contacts, memory-mapped and decoded one record
+// at a time. Lookup tables let a contact be found by id, number or name without
+// touching the other records.
+//
+// Layout (big-endian):
+//   header   int magic | long sequence | int count | int idHighWaterMark
+//   records  int id | str name | str type | short n | n x long number
+//   tables   int[count] record offsets
+//            long[count] id << 32 | index, sorted
+//            long[numbers] hash(number) << 32 | index, sorted
+//            long[count] hash(name key) << 32 | index, sorted
+//   footer   int offsetTable | int idTable | int numberTable | int numberCount | int nameTable
+// where str is an unsigned short byte length followed by UTF-8 bytes and
+// numbers are canonical longs (see PhoneNumbers).
+// Hash tables can give false positives, callers check the decoded contact.
+final class MappedSnapshot {
+    // "ABS" and the format version; ABS2 stored numbers as strings
+    private static final int MAGIC_PREFIX = 0x41425300;
+    private static final int MAGIC = MAGIC_PREFIX | '3'; // "ABS3"
+    private static final int HEADER_SIZE = 20;
+    private static final int FOOTER_SIZE = 20;
+    
+    private final ByteBuffer buffer;
+    private final long sequence;
+    private final int count;
+    private final int idHighWaterMark;
+    private final int offsetTable;
+    private final int idTable;
+    private final int numberTable;
+    private final int numberCount;
+    private final int nameTable;
+    
+    private MappedSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int magic = buffer.capacity() < HEADER_SIZE + FOOTER_SIZE ? 0 : buffer.getInt(0);
+        if ((magic & 0xFFFFFF00) != MAGIC_PREFIX) {
+            throw new IOException("Not a contact snapshot");
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Unsupported contact snapshot format ABS" + (char) (magic & 0xFF)
+                + ", expected ABS" + (char) (MAGIC & 0xFF));
+        }
+        this.sequence = buffer.getLong(4);
+        this.count = buffer.getInt(12);
+        this.idHighWaterMark = buffer.getInt(16);
+        int footer = buffer.capacity() - FOOTER_SIZE;
+        this.offsetTable = buffer.getInt(footer);
+        this.idTable = buffer.getInt(footer + 4);
+        this.numberTable = buffer.getInt(footer + 8);
+        this.numberCount = buffer.getInt(footer + 12);
+        this.nameTable = buffer.getInt(footer + 16);
+    }
+    
+    // Maps the snapshot file, nothing is decoded until a record is read
+    static MappedSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new MappedSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+    
+    // idHighWaterMark covers ids of deleted contacts too, so they are never reused
+    static void write(Path file, long sequence, int idHighWaterMark, Collection<Contact> contacts) throws IOException {
+        int count = contacts.size();
+        int[] offsets = new int[count];
+        long[] ids = new long[count];
+        long[] names = new long[count];
+        List<Long> numbers = new ArrayList<>(count);
+        for (Contact contact : contacts) {
+            idHighWaterMark = Math.max(idHighWaterMark, contact.getId());
+        }
+        
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(count);
+            out.writeInt(idHighWaterMark);
+            
+            int index = 0;
+            for (Contact contact : contacts) {
+                offsets[index] = out.size();
+                ids[index] = entry(contact.getId(), index);
+                names[index] = entry(nameKey(contact.getName()).hashCode(), index);
+                
+                out.writeInt(contact.getId());
+                writeString(out, contact.getName());
+                writeString(out, contact.getType());
+                long[] phoneNumbers = contact.getPhoneNumberKeys();
+                out.writeShort(phoneNumbers.length);
+                for (long number : phoneNumbers) {
+                    out.writeLong(number);
+                    numbers.add(entry(Long.hashCode(number), index));
+                }
+                index++;
+            }
+            
+            int offsetTable = out.size();
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            int idTable = writeTable(out, ids);
+            int numberTable = writeTable(out, numbers.stream().mapToLong(Long::longValue).toArray());
+            int nameTable = writeTable(out, names);
+            
+            out.writeInt(offsetTable);
+            out.writeInt(idTable);
+            out.writeInt(numberTable);
+            out.writeInt(numbers.size());
+            out.writeInt(nameTable);
+            // size() stops counting at Integer.MAX_VALUE, offsets past it are wrong
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + file);
+            }
+        }
+    }
+    
+    long getSequence() { return sequence; }
+    int size() { return count; }
+    int getIdHighWaterMark() { return idHighWaterMark; }
+    
+    int idAt(int index) {
+        return buffer.getInt(buffer.getInt(offsetTable + index * 4));
+    }
+    
+    Contact read(int index) {
+        int position = buffer.getInt(offsetTable + index * 4);
+        int id = buffer.getInt(position);
+        position += 4;
+        String name = readString(position);
+        position += 2 + stringLength(position);
+        String type = readString(position);
+        position += 2 + stringLength(position);
+        int numberTotal = Short.toUnsignedInt(buffer.getShort(position));
+        position += 2;
+        long[] phoneNumbers = new long[numberTotal];
+        for (int i = 0; i < numberTotal; i++) {
+            phoneNumbers[i] = buffer.getLong(position);
+            position += 8;
+        }
+        return new Contact(id, name, ContactType.standardize(type), phoneNumbers);
+    }
+    
+    // Record index of the contact with this id, or -1
+    int indexOfId(int id) {
+        int[] found = find(idTable, count, id);
+        return found.length == 0 ? -1 : found[0];
+    }
+    
+    // Records that may hold the canonical number (same hash)
+    int[] indexesOfNumber(long number) {
+        return find(numberTable, numberCount, Long.hashCode(number));
+    }
+    
+    // Records that may have the name (same case-folded hash)
+    int[] indexesOfName(String name) {
+        return find(nameTable, count, nameKey(name).hashCode());
+    }
+    
+    // Must match ContactManager's nameKey
+    private static String nameKey(String name) {
+        return NGramIndex.normalize(name);
+    }
+    
+    private static long entry(int key, int index) {
+        return ((long) key << 32) | (index & 0xFFFFFFFFL);
+    }
+    
+    private static int writeTable(DataOutputStream out, long[] entries) throws IOException {
+        Arrays.sort(entries);
+        int start = out.size();
+        for (long entry : entries) {
+            out.writeLong(entry);
+        }
+        return start;
+    }
+    
+    // Binary search for the first entry with the key, then collect its run
+    private int[] find(int table, int length, int key) {
+        long target = (long) key << 32;
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(table + mid * 8) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        
+        int end = low;
+        while (end < length && (int) (buffer.getLong(table + end * 8) >> 32) == key) {
+            end++;
+        }
+        int[] indexes = new int[end - low];
+        for (int i = low; i < end; i++) {
+            indexes[i - low] = (int) buffer.getLong(table + i * 8);
+        }
+        return indexes;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Value too long for snapshot: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+    
+    private int stringLength(int position) {
+        return Short.toUnsignedInt(buffer.getShort(position));
+    }
+    
+    private String readString(int position) {
+        byte[] bytes = new byte[stringLength(position)];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -23,21 +23,22 @@ public class MenuInterface {
         System.out.println("5. Delete contact by number");
         System.out.println("6. Show all contacts");
         System.out.println("7. Exit");
+        System.out.println("8. Show performance statistics");
         System.out.println("═".repeat(50));
-        System.out.print("Enter your choice (1-7): ");
+        System.out.print("Enter your choice (1-8): ");
     }
     
     public int getMenuChoice() {
         while (true) {
             try {
                 int choice = Integer.parseInt(scanner.nextLine().trim());
-                if (choice >= 1 && choice <= 7) {
+                if (choice >= 1 && choice <= 8) {
                     return choice;
                 } else {
-                    System.out.print("  Invalid choice. Please enter a number between 1-7: ");
+                    System.out.print("  Invalid choice. Please enter a number between 1-8: ");
                 }
             } catch (NumberFormatException e) {
-                System.out.print("Invalid input. Please enter a number between 1-7: ");
+                System.out.print("Invalid input. Please enter a number between 1-8: ");
             }
         }
     }
@@ -57,14 +58,10 @@ public class MenuInterface {
             System.out.print("Enter contact type (Family/Personal/Work/Other): ");
             String type = scanner.nextLine().trim();
             
-            if (validator.isValidType(type)) {
+            ContactType parsed = ContactType.parse(type);
+            if (parsed != null) {
                 // Standardize the case
-                String[] allowedTypes = {"Family", "Personal", "Work", "Other"};
-                for (String allowed : allowedTypes) {
-                    if (allowed.equalsIgnoreCase(type)) {
-                        return allowed;
-                    }
-                }
+                return parsed.getDisplayName();
             }
             
             System.out.println(" Invalid type. Using 'Other' as default.");
@@ -72,4 +69,13 @@ public class MenuInterface {
         }
     }
     
+    // ContactManager and ValidationUtils never print, results are shown here
+    public void displayResult(OperationResult result) {
+        switch (result.getCode()) {
+            case CONTACT_ADDED -> System.out.println("✅ Contact added successfully!");
+            case NUMBER_ADDED -> System.out.println("📞 Number added to existing contact: " + result.getContact().getName());
+            default -> System.out.println("Error: " + result.getMessage());
+        }
+    }
+    
     public String getPhoneNumber() {
@@ -0,0 +1,133 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Trigram inverted index over lower-cased contact names.
+// "Name contains" queries intersect the posting lists of the query's trigrams
+// and only verify the few surviving candidates.
+class NGramIndex {
+    private static final int GRAM_LENGTH = 3;
+    
+    private final Map<String, Set<Contact>> postings = new HashMap<>();
+    // Name each contact was indexed under, lower-cased once at insert time
+    private final Map<Contact, String> indexedNames = new LinkedHashMap<>();
+    
+    void add(Contact contact) {
+        String name = normalize(contact.getName());
+        indexedNames.put(contact, name);
+        for (String gram : grams(name)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(contact);
+        }
+    }
+    
+    // Uses the indexed name, so it also works after the contact was renamed
+    void remove(Contact contact) {
+        String name = indexedNames.remove(contact);
+        if (name == null) {
+            return;
+        }
+        for (String gram : grams(name)) {
+            Set<Contact> posting = postings.get(gram);
+            if (posting != null && posting.remove(contact) && posting.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+    
+    void clear() {
+        postings.clear();
+        indexedNames.clear();
+    }
+    
+    // Contacts whose name contains the term (case insensitive), in id order
+    List<Contact> search(String term) {
+        List<Contact> results = new ArrayList<>();
+        forEachMatch(term, results::add);
+        results.sort(Comparator.comparingInt(Contact::getId));
+        return results;
+    }
+    
+    // Same matches as search, in no particular order and without collecting them
+    void forEachMatch(String term, Consumer<Contact> action) {
+        String query = normalize(term);
+        if (query.length() < GRAM_LENGTH) {
+            // Too short to have a trigram; the cached lower-case names make the scan allocation free
+            for (Map.Entry<Contact, String> entry : indexedNames.entrySet()) {
+                if (entry.getValue().contains(query)) {
+                    action.accept(entry.getKey());
+                }
+            }
+        } else {
+            intersect(query, action);
+        }
+    }
+    
+    // Upper bound on search(term) hits without intersecting anything: the
+    // size of the rarest trigram's posting list
+    int estimate(String term) {
+        String query = normalize(term);
+        int best = indexedNames.size();
+        if (query.length() < GRAM_LENGTH) {
+            return best;
+        }
+        for (String gram : grams(query)) {
+            Set<Contact> posting = postings.get(gram);
+            if (posting == null) {
+                return 0;
+            }
+            best = Math.min(best, posting.size());
+        }
+        return best;
+    }
+    
+    private void intersect(String query, Consumer<Contact> action) {
+        Set<String> queryGrams = grams(query);
+        List<Set<Contact>> lists = new ArrayList<>(queryGrams.size());
+        for (String gram : queryGrams) {
+            Set<Contact> posting = postings.get(gram);
+            if (posting == null) {
+                return;
+            }
+            lists.add(posting);
+        }
+        
+        // Drive from the rarest trigram and probe the others
+        lists.sort(Comparator.comparingInt(Set::size));
+        for (Contact candidate : lists.get(0)) {
+            if (inAll(candidate, lists) && indexedNames.get(candidate).contains(query)) {
+                action.accept(candidate);
+            }
+        }
+    }
+    
+    private boolean inAll(Contact candidate, List<Set<Contact>> lists) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static Set<String> grams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+    
+    static String normalize(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+}
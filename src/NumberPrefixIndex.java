@@ -0,0 +1,89 @@
+package com.ucas.addressbook;
+
+import java.util.function.LongConsumer;
+
+// Canonical numbers in digit order for prefix and suffix searches. Numbers
+// with the same digit count and prefix are one range of longs (see
+// PhoneNumbers), so a prefix is answered with one range per possible length
+// instead of looking at every number. Suffixes use a second set holding each
+// number's digits reversed. Not thread-safe, see LockedIndexes.
+class NumberPrefixIndex {
+    // Local numbers are displayed as 0599..., stored as 970599...
+    private static final int LOCAL_DIGITS = 10;
+    private static final int CANONICAL_LOCAL_DIGITS = 12;
+    
+    private final SortedLongSet numbers = new SortedLongSet();
+    private final SortedLongSet reversed = new SortedLongSet();
+    
+    void add(long number) {
+        numbers.add(number);
+        reversed.add(PhoneNumbers.reverse(number));
+    }
+    
+    void remove(long number) {
+        numbers.remove(number);
+        reversed.remove(PhoneNumbers.reverse(number));
+    }
+    
+    void clear() {
+        numbers.clear();
+        reversed.clear();
+    }
+    
+    // Numbers whose digits start with the prefix, as displayed ("0599") or
+    // with the country code ("970599"), like ContactQuery.numberPrefix
+    void forEachWithPrefix(String digits, LongConsumer action) {
+        for (int length = Math.max(1, digits.length()); length <= PhoneNumbers.MAX_DIGITS; length++) {
+            forEachInRange(numbers, digits, length, action);
+        }
+        if (isLocalPrefix(digits)) {
+            forEachInRange(numbers, canonicalPrefix(digits), CANONICAL_LOCAL_DIGITS, action);
+        }
+    }
+    
+    // Displayed numbers only differ from the canonical digits at the front,
+    // so the canonical digits alone decide suffixes
+    void forEachWithSuffix(String digits, LongConsumer action) {
+        String backwards = new StringBuilder(digits).reverse().toString();
+        LongConsumer unreverse = number -> action.accept(PhoneNumbers.reverse(number));
+        for (int length = Math.max(1, digits.length()); length <= PhoneNumbers.MAX_DIGITS; length++) {
+            forEachInRange(reversed, backwards, length, unreverse);
+        }
+    }
+    
+    int countWithPrefix(String digits) {
+        int count = 0;
+        for (int length = Math.max(1, digits.length()); length <= PhoneNumbers.MAX_DIGITS; length++) {
+            count += countInRange(numbers, digits, length);
+        }
+        if (isLocalPrefix(digits)) {
+            count += countInRange(numbers, canonicalPrefix(digits), CANONICAL_LOCAL_DIGITS);
+        }
+        return count;
+    }
+    
+    int countWithSuffix(String digits) {
+        String backwards = new StringBuilder(digits).reverse().toString();
+        int count = 0;
+        for (int length = Math.max(1, digits.length()); length <= PhoneNumbers.MAX_DIGITS; length++) {
+            count += countInRange(reversed, backwards, length);
+        }
+        return count;
+    }
+    
+    private static boolean isLocalPrefix(String digits) {
+        return !digits.isEmpty() && digits.charAt(0) == '0' && digits.length() <= LOCAL_DIGITS;
+    }
+    
+    private static String canonicalPrefix(String localDigits) {
+        return "970" + localDigits.substring(1);
+    }
+    
+    private static void forEachInRange(SortedLongSet set, String prefix, int length, LongConsumer action) {
+        set.forEachInRange(PhoneNumbers.firstWithPrefix(prefix, length), PhoneNumbers.lastWithPrefix(prefix, length), action);
+    }
+    
+    private static int countInRange(SortedLongSet set, String prefix, int length) {
+        return set.count(PhoneNumbers.firstWithPrefix(prefix, length), PhoneNumbers.lastWithPrefix(prefix, length));
+    }
+}
@@ -0,0 +1,80 @@
+package com.ucas.addressbook;
+
+// Outcome of a validation or of ContactManager.tryAddContact. Failures carry a
+// code, the offending field and a message; nothing is printed, callers such as
+// MenuInterface decide whether to show it. Fixed failures are shared constants,
+// so rejecting a record allocates nothing.
+public final class OperationResult {
+    public enum Code {
+        OK(true),
+        CONTACT_ADDED(true),
+        NUMBER_ADDED(true),
+        NAME_EMPTY(false),
+        NAME_TOO_SHORT(false),
+        NAME_INVALID_CHARACTERS(false),
+        TYPE_INVALID(false),
+        PHONE_EMPTY(false),
+        PHONE_NO_DIGITS(false),
+        PHONE_INVALID_LENGTH(false),
+        PHONE_RESERVED(false),
+        NUMBER_EXISTS(false);
+        
+        private final boolean success;
+        
+        Code(boolean success) {
+            this.success = success;
+        }
+        
+        public boolean isSuccess() { return success; }
+    }
+    
+    public enum Field { NAME, TYPE, PHONE }
+    
+    static final OperationResult OK = new OperationResult(Code.OK, null, null, null);
+    static final OperationResult NAME_EMPTY = failure(Code.NAME_EMPTY, Field.NAME, "Name cannot be empty.");
+    static final OperationResult NAME_TOO_SHORT = failure(Code.NAME_TOO_SHORT, Field.NAME, "Name must be at least 2 characters.");
+    static final OperationResult NAME_INVALID_CHARACTERS = failure(Code.NAME_INVALID_CHARACTERS, Field.NAME, "Name contains invalid characters.");
+    static final OperationResult TYPE_INVALID = failure(Code.TYPE_INVALID, Field.TYPE, "Invalid contact type.");
+    static final OperationResult PHONE_EMPTY = failure(Code.PHONE_EMPTY, Field.PHONE, "Phone number cannot be empty.");
+    static final OperationResult PHONE_NO_DIGITS = failure(Code.PHONE_NO_DIGITS, Field.PHONE, "Phone number must contain digits.");
+    static final OperationResult PHONE_INVALID_LENGTH = failure(Code.PHONE_INVALID_LENGTH, Field.PHONE, "Phone number must be 7-15 digits.");
+    static final OperationResult NUMBER_EXISTS = failure(Code.NUMBER_EXISTS, Field.PHONE, "This phone number already exists in another contact.");
+    
+    private final Code code;
+    private final Field field;
+    private final String message;
+    private final Contact contact;
+    
+    private OperationResult(Code code, Field field, String message, Contact contact) {
+        this.code = code;
+        this.field = field;
+        this.message = message;
+        this.contact = contact;
+    }
+    
+    static OperationResult failure(Code code, Field field, String message) {
+        return new OperationResult(code, field, message, null);
+    }
+    
+    static OperationResult contactAdded(Contact contact) {
+        return new OperationResult(Code.CONTACT_ADDED, null, null, contact);
+    }
+    
+    static OperationResult numberAdded(Contact contact) {
+        return new OperationResult(Code.NUMBER_ADDED, Field.PHONE, null, contact);
+    }
+    
+    public boolean isSuccess() { return code.isSuccess(); }
+    public Code getCode() { return code; }
+    // Input that caused a failure, null if it is not tied to one field
+    public Field getField() { return field; }
+    // Human readable reason for a failure, null on success
+    public String getMessage() { return message; }
+    // Contact that was created or given the number, null on failure
+    public Contact getContact() { return contact; }
+    
+    @Override
+    public String toString() {
+        return message == null ? code.toString() : code + ": " + message;
+    }
+}
@@ -0,0 +1,27 @@
+package com.ucas.addressbook;
+
+// Result of ValidationUtils.checkPhone: the number's digits and normalized
+// form are computed once and reused by the caller
+public final class PhoneCheck {
+    private final String digits;
+    private final String normalized;
+    private final long canonical;
+    private final OperationResult result;
+    
+    PhoneCheck(String digits, String normalized, OperationResult result) {
+        this.digits = digits;
+        this.normalized = normalized;
+        this.canonical = PhoneNumbers.encode(normalized);
+        this.result = result;
+    }
+    
+    public boolean isValid() { return result.isSuccess(); }
+    // OperationResult.OK, or why the number was rejected
+    public OperationResult getResult() { return result; }
+    // Digits of the input with formatting removed
+    public String getDigits() { return digits; }
+    // Same as ValidationUtils.validateAndCleanPhone
+    public String getNormalized() { return normalized; }
+    // Normalized number packed into a long, how contacts store it
+    long getCanonical() { return canonical; }
+}
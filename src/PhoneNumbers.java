@@ -0,0 +1,132 @@
+package com.ucas.addressbook;
+
+// Canonical phone numbers as primitive longs. A number is cleaned like
+// ValidationUtils.validateAndCleanPhone, then its digits are packed into the
+// low 57 bits and the digit count into the bits above, so leading zeros
+// survive and "059-912-3456", "0599123456" and "970599123456" are all the
+// same long. Comparing two numbers is a single == instead of String.equals.
+final class PhoneNumbers {
+    // No digits, or too many to pack; never stored or indexed
+    static final long INVALID = -1;
+    static final int MAX_DIGITS = 17;
+    
+    private static final int LENGTH_SHIFT = 57;
+    private static final long VALUE_MASK = (1L << LENGTH_SHIFT) - 1;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+    
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+    
+    private PhoneNumbers() {
+    }
+    
+    static long canonical(String phone) {
+        return phone == null ? INVALID : encode(normalize(digitsOf(phone)));
+    }
+    
+    // Packs an already normalized digit string
+    static long encode(String digits) {
+        int length = digits.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = value * 10 + (digits.charAt(i) - '0');
+        }
+        return ((long) length << LENGTH_SHIFT) | value;
+    }
+    
+    // The normalized digits, e.g. "970599123456"
+    static String digits(long number) {
+        int length = (int) (number >>> LENGTH_SHIFT);
+        char[] digits = new char[length];
+        long value = number & VALUE_MASK;
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+    
+    // The way users type it: local numbers get their leading 0 back instead of
+    // the +970 country code that normalize added
+    static String format(long number) {
+        String digits = digits(number);
+        if (digits.length() == 12 && digits.startsWith("970")) {
+            return "0" + digits.substring(3);
+        }
+        return digits;
+    }
+    
+    // The same digits back to front, e.g. for suffix searches
+    static long reverse(long number) {
+        int length = (int) (number >>> LENGTH_SHIFT);
+        long value = number & VALUE_MASK;
+        long reversed = 0;
+        for (int i = 0; i < length; i++) {
+            reversed = reversed * 10 + value % 10;
+            value /= 10;
+        }
+        return ((long) length << LENGTH_SHIFT) | reversed;
+    }
+    
+    // All numbers of one length starting with some digits lie between these
+    // two, as longs; prefix must be digits and at most length long
+    static long firstWithPrefix(String prefix, int length) {
+        return ((long) length << LENGTH_SHIFT) | prefixValue(prefix) * POWERS_OF_TEN[length - prefix.length()];
+    }
+    
+    static long lastWithPrefix(String prefix, int length) {
+        long scale = POWERS_OF_TEN[length - prefix.length()];
+        return ((long) length << LENGTH_SHIFT) | ((prefixValue(prefix) + 1) * scale - 1);
+    }
+    
+    private static long prefixValue(String prefix) {
+        long value = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            value = value * 10 + (prefix.charAt(i) - '0');
+        }
+        return value;
+    }
+    
+    static String normalize(String digits) {
+        // Add country code if missing (assuming Palestine +970)
+        if (digits.length() == 10 && digits.charAt(0) == '0') {
+            return "970" + digits.substring(1);
+        }
+        return digits;
+    }
+    
+    // Same as replaceAll("[^0-9]", "") without the regex, and without any
+    // allocation when the input already is all digits
+    static String digitsOf(String phone) {
+        int length = phone.length();
+        int first = 0;
+        while (first < length && isDigit(phone.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return phone;
+        }
+        
+        char[] digits = new char[length];
+        phone.getChars(0, first, digits, 0);
+        int count = first;
+        for (int i = first + 1; i < length; i++) {
+            char c = phone.charAt(i);
+            if (isDigit(c)) {
+                digits[count++] = c;
+            }
+        }
+        return new String(digits, 0, count);
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
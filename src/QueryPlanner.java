@@ -0,0 +1,173 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Runs a ContactQuery against a store's indexes.
+//
+// An AND is driven by its operand with the smallest index estimate; an OR
+// can use indexes only if every operand can, and then costs their sum; a NOT
+// always needs a scan. If the cheapest plan is still not smaller than the
+// store, the whole store is scanned once. Either way each candidate is
+// checked against the full query exactly once.
+//
+// Results are in id order like the other searches. Index candidates already
+// come in id order, so offset and limit stop the pass early; a scan has to
+// collect and sort its matches first.
+final class QueryPlanner {
+    private static final Comparator<Contact> BY_ID = Comparator.comparingInt(Contact::getId);
+    
+    private QueryPlanner() {
+    }
+    
+    static List<Contact> run(ContactQuery query, ContactIndexes indexes) {
+        int offset = query.getOffset();
+        int limit = query.getLimit();
+        List<Contact> results = new ArrayList<>();
+        if (limit == 0) {
+            return results;
+        }
+        
+        if (usesIndex(estimate(query, indexes), indexes)) {
+            for (Contact candidate : lookup(query, indexes)) {
+                if (query.matches(candidate)) {
+                    if (offset > 0) {
+                        offset--;
+                    } else if (results.add(candidate) && results.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        }
+        
+        for (Contact contact : indexes.scan()) {
+            if (query.matches(contact)) {
+                results.add(contact);
+            }
+        }
+        results.sort(BY_ID);
+        int from = Math.min(offset, results.size());
+        int to = (int) Math.min((long) from + limit, results.size());
+        return new ArrayList<>(results.subList(from, to));
+    }
+    
+    // What run() would do for the query right now, without running it
+    static Plan explain(ContactQuery query, ContactIndexes indexes) {
+        int estimate = estimate(query, indexes);
+        if (!usesIndex(estimate, indexes)) {
+            return new Plan("scan", indexes.size());
+        }
+        return new Plan("index " + driver(query, indexes), estimate);
+    }
+    
+    private static boolean usesIndex(int estimate, ContactIndexes indexes) {
+        return estimate != ContactIndexes.NO_INDEX && estimate < indexes.size();
+    }
+    
+    // The indexed predicates lookup() would use, e.g. name~"ali" or (type=Work OR number^0599)
+    private static String driver(ContactQuery query, ContactIndexes indexes) {
+        return switch (query.kind()) {
+            case AND -> driver(cheapestOperand(query, indexes), indexes);
+            case OR -> {
+                StringBuilder sb = new StringBuilder("(");
+                for (ContactQuery operand : query.operands()) {
+                    if (sb.length() > 1) {
+                        sb.append(" OR ");
+                    }
+                    sb.append(driver(operand, indexes));
+                }
+                yield sb.append(')').toString();
+            }
+            default -> query.criteriaString();
+        };
+    }
+    
+    // Candidates an index plan would produce, NO_INDEX if it needs a scan
+    static int estimate(ContactQuery query, ContactIndexes indexes) {
+        return switch (query.kind()) {
+            case AND -> {
+                int best = ContactIndexes.NO_INDEX;
+                for (ContactQuery operand : query.operands()) {
+                    int estimate = estimate(operand, indexes);
+                    if (estimate != ContactIndexes.NO_INDEX && (best == ContactIndexes.NO_INDEX || estimate < best)) {
+                        best = estimate;
+                    }
+                }
+                yield best;
+            }
+            case OR -> {
+                long total = 0;
+                for (ContactQuery operand : query.operands()) {
+                    int estimate = estimate(operand, indexes);
+                    if (estimate == ContactIndexes.NO_INDEX) {
+                        yield ContactIndexes.NO_INDEX;
+                    }
+                    total += estimate;
+                }
+                yield (int) Math.min(total, Integer.MAX_VALUE);
+            }
+            case NOT -> ContactIndexes.NO_INDEX;
+            default -> indexes.estimate(query);
+        };
+    }
+    
+    // Superset of the matches in id order; only called when estimate() found an index plan
+    private static List<Contact> lookup(ContactQuery query, ContactIndexes indexes) {
+        switch (query.kind()) {
+            case AND -> {
+                return lookup(cheapestOperand(query, indexes), indexes);
+            }
+            case OR -> {
+                List<Contact> union = new ArrayList<>();
+                for (ContactQuery operand : query.operands()) {
+                    union.addAll(lookup(operand, indexes));
+                }
+                union.sort(BY_ID);
+                // A contact found by several operands appears once
+                List<Contact> distinct = new ArrayList<>(union.size());
+                for (Contact contact : union) {
+                    if (distinct.isEmpty() || distinct.get(distinct.size() - 1).getId() != contact.getId()) {
+                        distinct.add(contact);
+                    }
+                }
+                return distinct;
+            }
+            default -> {
+                return indexes.lookup(query);
+            }
+        }
+    }
+    
+    // The AND operand with the smallest index estimate
+    private static ContactQuery cheapestOperand(ContactQuery query, ContactIndexes indexes) {
+        ContactQuery driver = null;
+        int best = ContactIndexes.NO_INDEX;
+        for (ContactQuery operand : query.operands()) {
+            int estimate = estimate(operand, indexes);
+            if (estimate != ContactIndexes.NO_INDEX && (driver == null || estimate < best)) {
+                driver = operand;
+                best = estimate;
+            }
+        }
+        return driver;
+    }
+    
+    // How a query is answered and how many contacts it checks: the index
+    // estimate (an upper bound) or the whole store for a scan
+    static final class Plan {
+        final String description;
+        final int examined;
+        
+        Plan(String description, int examined) {
+            this.description = description;
+            this.examined = examined;
+        }
+        
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
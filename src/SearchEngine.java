@@ -1,18 +1,83 @@
 package com.ucas.addressbook;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
 
 public class SearchEngine {
+    // Lists at least this long are split across the pool in parallel mode
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 20_000;
+    // Smallest slice of the list one fork/join task scans by itself
+    private static final int MIN_CHUNK = 2_048;
+    
+    private final VariationDictionary variations;
+    // Null for sequential scans
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    
+    public SearchEngine() {
+        this(VariationDictionary.getDefault());
+    }
+    
+    public SearchEngine(VariationDictionary variations) {
+        this(variations, null, DEFAULT_PARALLEL_THRESHOLD);
+    }
+    
+    // Parallel mode, e.g. new SearchEngine(dictionary, ForkJoinPool.commonPool(), 20_000):
+    // lists of at least parallelThreshold contacts are cut into chunks that are
+    // scanned on the pool and joined back in list order. Shorter lists, and
+    // lists without fast random access (LinkedList), are scanned in one pass.
+    public SearchEngine(VariationDictionary variations, ForkJoinPool pool, int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be positive: " + parallelThreshold);
+        }
+        this.variations = variations;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
     
     // Standard search: name contains search term
     public List<Contact> searchByNameContains(List<Contact> contacts, String searchTerm) {
+        return filter(contacts, contact -> containsIgnoreCase(contact.getName(), searchTerm));
+    }
+    
+    // Case-insensitive contains without allocating lower-case copies
+    static boolean containsIgnoreCase(String text, String term) {
+        int last = text.length() - term.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // All criteria of the query in one pass over the list, keeping its order;
+    // offset and limit stop the pass as soon as the page is full
+    public List<Contact> search(List<Contact> contacts, ContactQuery query) {
+        if (searchesInParallel(contacts, query)) {
+            List<Contact> matches = filter(contacts, query::matches);
+            return new ArrayList<>(matches.subList(Math.min(query.getOffset(), matches.size()), matches.size()));
+        }
+        
         List<Contact> results = new ArrayList<>();
-        String searchLower = searchTerm.toLowerCase();
+        int skip = query.getOffset();
         
         for (Contact contact : contacts) {
-            if (contact.getName().toLowerCase().contains(searchLower)) {
-                results.add(contact);
+            if (results.size() == query.getLimit()) {
+                break;
+            }
+            if (query.matches(contact)) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    results.add(contact);
+                }
             }
         }
         
@@ -21,33 +86,23 @@ public class SearchEngine {
     
     // Bonus: Fuzzy name matching
     public List<Contact> searchByNameFuzzy(List<Contact> contacts, String searchName) {
-        List<Contact> results = new ArrayList<>();
-        searchName = searchName.toLowerCase();
-        
-        for (Contact contact : contacts) {
-            if (isSimilarName(contact.getName().toLowerCase(), searchName)) {
-                results.add(contact);
-            }
-        }
+        String query = searchName.toLowerCase();
+        // Canonical keys of the query are looked up once, not per contact
+        Set<String> searchKeys = variations.canonicalKeys(query);
         
-        return results;
+        return filter(contacts, contact -> isSimilarName(contact.getName().toLowerCase(), query, searchKeys));
     }
     
     // Exact number search
     public List<Contact> searchByNumberExact(List<Contact> contacts, String number) {
-        List<Contact> results = new ArrayList<>();
-        
-        for (Contact contact : contacts) {
-            if (contact.hasPhoneNumber(number)) {
-                results.add(contact);
-            }
-        }
+        // Canonicalized once, then each stored number is a long comparison
+        long key = PhoneNumbers.canonical(number);
         
-        return results;
+        return filter(contacts, contact -> contact.hasPhoneNumber(key));
     }
     
     // Advanced fuzzy matching algorithm
-    private boolean isSimilarName(String name1, String name2) {
+    private boolean isSimilarName(String name1, String name2, Set<String> name2Keys) {
         // 1. Direct comparison
         if (name1.equals(name2)) return true;
         
@@ -55,71 +110,114 @@ public class SearchEngine {
         if (name1.contains(name2) || name2.contains(name1)) return true;
         
         // 3. Check for common Arabic/English name variations
-        if (isCommonVariation(name1, name2)) return true;
-        
-        // 4. Calculate Levenshtein distance (simplified)
-        double similarity = calculateNameSimilarity(name1, name2);
-        return similarity >= 0.75; // 75% similarity threshold
-    }
-    
-    private boolean isCommonVariation(String name1, String name2) {
-        // Common name variations in Arabic/English
-        String[][] variations = {
-            {"mohamed", "mohamad", "mohammed", "muhammad", "محمد"},
-            {"ahmed", "ahmad", "احمد"},
-            {"ali", "aly", "علي"},
-            {"yousef", "yusuf", "youssef", "يوسف"},
-            {"khaled", "khalid", "خالد"},
-            {"osama", "usama", "اسامة"},
-            {"hassan", "hassaan", "حسن"},
-            {"ibrahim", "ibraheem", "ابراهيم"},
-            {"nour", "noor", "نور"},
-            {"fatima", "fatma", "fatimah", "فاطمة"}
-        };
+        if (isCommonVariation(name1, name2Keys)) return true;
         
-        for (String[] group : variations) {
-            boolean found1 = false, found2 = false;
-            for (String variant : group) {
-                if (name1.contains(variant) || variant.contains(name1)) found1 = true;
-                if (name2.contains(variant) || variant.contains(name2)) found2 = true;
-            }
-            if (found1 && found2) return true;
+        // 4. Edit distance similarity
+        return EditDistance.isSimilar(name1, name2, 0.75); // 75% similarity threshold
+    }
+    
+    private boolean isCommonVariation(String name1, Set<String> name2Keys) {
+        // Both names share a canonical form, e.g. "mohamad" and "muhammad"
+        if (name2Keys.isEmpty()) return false;
+        return !Collections.disjoint(variations.canonicalKeys(name1), name2Keys);
+    }
+    
+    // Search by contact type
+    public List<Contact> searchByType(List<Contact> contacts, String type) {
+        // Parsed once, then each contact is an enum identity check
+        ContactType wanted = ContactType.parse(type);
+        if (wanted == null) {
+            return new ArrayList<>();
         }
         
-        return false;
+        return filter(contacts, contact -> contact.getContactType() == wanted);
     }
     
-    private double calculateNameSimilarity(String name1, String name2) {
-        int maxLength = Math.max(name1.length(), name2.length());
-        if (maxLength == 0) return 1.0;
-        
-        // Calculate Hamming distance (simplified)
-        int minLength = Math.min(name1.length(), name2.length());
-        int matches = 0;
-        
-        for (int i = 0; i < minLength; i++) {
-            if (name1.charAt(i) == name2.charAt(i)) {
-                matches++;
+    // Whether a scan of this list is split across the pool
+    boolean scansInParallel(List<Contact> contacts) {
+        return pool != null && contacts.size() >= parallelThreshold && contacts instanceof RandomAccess;
+    }
+    
+    // Without a limit every contact is checked anyway, so the pass can be split
+    boolean searchesInParallel(List<Contact> contacts, ContactQuery query) {
+        return query.getLimit() == Integer.MAX_VALUE && scansInParallel(contacts);
+    }
+    
+    // The path a search took to find results. query is null for the searches
+    // that always check every contact.
+    QueryPlanner.Plan explain(List<Contact> contacts, ContactQuery query, List<Contact> results) {
+        if (query == null || searchesInParallel(contacts, query)) {
+            return new QueryPlanner.Plan(scansInParallel(contacts) ? "parallel scan" : "scan", contacts.size());
+        }
+        if (results.size() < query.getLimit()) {
+            return new QueryPlanner.Plan("scan", contacts.size());
+        }
+        // A full page stops the pass right after its last result
+        int examined = 0;
+        if (!results.isEmpty()) {
+            Contact last = results.get(results.size() - 1);
+            for (Contact contact : contacts) {
+                examined++;
+                if (contact == last) {
+                    break;
+                }
             }
         }
-        
-        // Account for length difference
-        double lengthPenalty = Math.abs(name1.length() - name2.length()) * 0.1;
-        double similarity = (double) matches / maxLength;
-        
-        return similarity - lengthPenalty;
+        return new QueryPlanner.Plan("scan", examined);
     }
     
-    // Search by contact type
-    public List<Contact> searchByType(List<Contact> contacts, String type) {
+    // Matching contacts in list order. A parallel scan aims at four chunks
+    // per pool thread so a slow chunk (long names for the fuzzy match) does
+    // not leave the other threads idle.
+    private List<Contact> filter(List<Contact> contacts, Predicate<Contact> matches) {
+        if (!scansInParallel(contacts)) {
+            return scan(contacts, matches);
+        }
+        int chunk = Math.max(MIN_CHUNK, contacts.size() / (pool.getParallelism() * 4));
+        return pool.invoke(new ScanTask(contacts, 0, contacts.size(), chunk, matches));
+    }
+    
+    private static List<Contact> scan(List<Contact> contacts, Predicate<Contact> matches) {
         List<Contact> results = new ArrayList<>();
         
         for (Contact contact : contacts) {
-            if (contact.getType().equalsIgnoreCase(type)) {
+            if (matches.test(contact)) {
                 results.add(contact);
             }
         }
         
         return results;
     }
+    
+    // Halves its range until it is one chunk; the left half's matches come first
+    @SuppressWarnings("serial")
+    private static final class ScanTask extends RecursiveTask<List<Contact>> {
+        private final List<Contact> contacts;
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final Predicate<Contact> matches;
+        
+        ScanTask(List<Contact> contacts, int from, int to, int chunk, Predicate<Contact> matches) {
+            this.contacts = contacts;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.matches = matches;
+        }
+        
+        @Override
+        protected List<Contact> compute() {
+            if (to - from <= chunk) {
+                return scan(contacts.subList(from, to), matches);
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(contacts, from, middle, chunk, matches);
+            left.fork();
+            List<Contact> right = new ScanTask(contacts, middle, to, chunk, matches).compute();
+            List<Contact> results = left.join();
+            results.addAll(right);
+            return results;
+        }
+    }
               }
@@ -0,0 +1,56 @@
+package com.ucas.addressbook;
+
+// One result of ContactManager.searchRanked: the contact and how well its name
+// matched. Hits rank by match kind, then edit distance, then id.
+public final class SearchHit {
+    // Best first
+    public enum Match {
+        EXACT,       // whole name, ignoring case
+        PREFIX,      // name starts with the query
+        WORD_PREFIX, // a later word of the name starts with the query
+        CONTAINS,    // query anywhere in the name
+        VARIATION,   // known spelling variation, "Mohamed" for "Muhammad"
+        FUZZY        // every query word within a few edits of a name word
+    }
+    
+    private final Contact contact;
+    private final Match match;
+    private final int distance;
+    
+    SearchHit(Contact contact, Match match, int distance) {
+        this.contact = contact;
+        this.match = match;
+        this.distance = distance;
+    }
+    
+    public Contact getContact() { return contact; }
+    public Match getMatch() { return match; }
+    // Total edits for fuzzy hits, 0 otherwise
+    public int getDistance() { return distance; }
+    
+    // 100 for an exact match, lower for weaker ones; hits are sorted by it
+    public int getScore() {
+        return 100 - 15 * match.ordinal() - distance;
+    }
+    
+    // Kind of match of a name that contains the query, both lower-cased
+    static Match classify(String name, String query) {
+        if (name.equals(query)) {
+            return Match.EXACT;
+        }
+        if (name.startsWith(query)) {
+            return Match.PREFIX;
+        }
+        for (int at = name.indexOf(query, 1); at > 0; at = name.indexOf(query, at + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(at - 1))) {
+                return Match.WORD_PREFIX;
+            }
+        }
+        return Match.CONTAINS;
+    }
+    
+    @Override
+    public String toString() {
+        return contact.getName() + " (" + match + (distance > 0 ? ", " + distance + " edits" : "") + ")";
+    }
+}
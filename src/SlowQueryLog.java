@@ -0,0 +1,199 @@
+package com.ucas.addressbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log of ContactManager and SearchEngine calls that took at least the
+// threshold, one line each:
+//   2026-10-17T09:12:01.532Z searchByNameFuzzy 812.402 ms examined=1000000 returned=12 plan="scan" params=["mohamed", 2]
+// examined is -1 when the plan does not say. Calls are handed to
+// InstrumentedContactManager or InstrumentedSearchEngine to be checked.
+//
+// The calling thread only queues the entry; a background thread formats and
+// writes it. When the queue is full the entry is dropped and counted, so a
+// slow disk never slows the searches down. close() writes what is queued,
+// and entries logged after it are counted as dropped.
+public class SlowQueryLog implements Closeable {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final Entry END = new Entry(null, null, 0, 0, 0, null);
+    
+    private final Writer out;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long thresholdNanos;
+    // Set under the queue's lock, so no entry is queued after END
+    private boolean closed;
+    // First write failure, reported by close(); later entries are dropped
+    private volatile IOException failure;
+    
+    // Appends to the file, creating it if needed
+    public SlowQueryLog(Path file, Duration threshold) throws IOException {
+        this(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+            threshold);
+    }
+    
+    public SlowQueryLog(Writer out, Duration threshold) {
+        this.out = out;
+        setThreshold(threshold);
+        this.writer = new Thread(this::writeEntries, "slow-query-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    public Duration getThreshold() {
+        return Duration.ofNanos(thresholdNanos);
+    }
+    
+    public void setThreshold(Duration threshold) {
+        if (threshold == null || threshold.isNegative()) {
+            throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+        }
+        this.thresholdNanos = threshold.toNanos();
+    }
+    
+    // Entries written so far
+    public long getLogged() { return logged.sum(); }
+    // Entries lost to a full queue, a write failure or a closed log
+    public long getDropped() { return dropped.sum(); }
+    
+    boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+    
+    // Never waits for the writer; parameters are formatted later on its thread
+    void log(String operation, Object[] parameters, long elapsedNanos, int examined, int returned, String plan) {
+        Entry entry = new Entry(operation, parameters, elapsedNanos, examined, returned, plan);
+        synchronized (queue) {
+            if (closed || failure != null || !queue.offer(entry)) {
+                dropped.increment();
+            }
+        }
+    }
+    
+    // Waits until everything queued before the call is written. Entries
+    // logged from then on are dropped.
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // out is closed only after the writer has exited, so an interrupt
+        // is kept for the caller instead of ending the wait
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private void writeEntries() {
+        try {
+            while (true) {
+                Entry entry = queue.take();
+                if (entry == END) {
+                    flush();
+                    return;
+                }
+                if (failure != null) {
+                    dropped.increment();
+                    continue;
+                }
+                try {
+                    write(entry);
+                } catch (IOException e) {
+                    failure = e;
+                    dropped.increment();
+                }
+                // Flushed whenever the queue runs dry, so the file is current
+                if (queue.isEmpty()) {
+                    flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+    
+    private void write(Entry entry) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Instant.ofEpochMilli(entry.time)).append(' ')
+            .append(entry.operation).append(' ')
+            .append(String.format(Locale.ROOT, "%.3f ms", entry.elapsedNanos / 1e6))
+            .append(" examined=").append(entry.examined)
+            .append(" returned=").append(entry.returned)
+            .append(" plan=\"").append(entry.plan == null ? "-" : entry.plan).append('"')
+            .append(" params=[");
+        for (int i = 0; i < entry.parameters.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            Object parameter = entry.parameters[i];
+            sb.append(parameter instanceof String ? "\"" + parameter + "\"" : String.valueOf(parameter));
+        }
+        out.write(sb.append(']').append(System.lineSeparator()).toString());
+        logged.increment();
+    }
+    
+    private static final class Entry {
+        final long time = System.currentTimeMillis();
+        final String operation;
+        final Object[] parameters;
+        final long elapsedNanos;
+        final int examined;
+        final int returned;
+        final String plan;
+        
+        Entry(String operation, Object[] parameters, long elapsedNanos, int examined, int returned, String plan) {
+            this.operation = operation;
+            this.parameters = parameters;
+            this.elapsedNanos = elapsedNanos;
+            this.examined = examined;
+            this.returned = returned;
+            this.plan = plan;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.ucas.addressbook;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+// Set of longs in ascending order, kept as a list of small sorted blocks (a
+// one-level B+ tree). Adding or removing shifts at most one block, and a
+// range is a binary search over the blocks' first values followed by a walk.
+// Not thread-safe.
+final class SortedLongSet {
+    private static final int BLOCK_SIZE = 512;
+    
+    private long[][] blocks = new long[4][];
+    private int[] blockSizes = new int[4];
+    private int blockCount;
+    private int size;
+    
+    int size() {
+        return size;
+    }
+    
+    boolean contains(long value) {
+        if (blockCount == 0) {
+            return false;
+        }
+        int block = blockOf(value);
+        return Arrays.binarySearch(blocks[block], 0, blockSizes[block], value) >= 0;
+    }
+    
+    boolean add(long value) {
+        if (blockCount == 0) {
+            insertBlock(0, new long[BLOCK_SIZE], 0);
+        }
+        int block = blockOf(value);
+        int position = Arrays.binarySearch(blocks[block], 0, blockSizes[block], value);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        
+        if (blockSizes[block] == BLOCK_SIZE) {
+            // Split in half, the upper half becomes the next block
+            int half = BLOCK_SIZE / 2;
+            long[] upper = new long[BLOCK_SIZE];
+            System.arraycopy(blocks[block], half, upper, 0, BLOCK_SIZE - half);
+            blockSizes[block] = half;
+            insertBlock(block + 1, upper, BLOCK_SIZE - half);
+            if (position > half) {
+                block++;
+                position -= half;
+            }
+        }
+        
+        long[] values = blocks[block];
+        System.arraycopy(values, position, values, position + 1, blockSizes[block] - position);
+        values[position] = value;
+        blockSizes[block]++;
+        size++;
+        return true;
+    }
+    
+    boolean remove(long value) {
+        if (blockCount == 0) {
+            return false;
+        }
+        int block = blockOf(value);
+        long[] values = blocks[block];
+        int position = Arrays.binarySearch(values, 0, blockSizes[block], value);
+        if (position < 0) {
+            return false;
+        }
+        
+        System.arraycopy(values, position + 1, values, position, blockSizes[block] - position - 1);
+        size--;
+        if (--blockSizes[block] == 0) {
+            removeBlock(block);
+        }
+        return true;
+    }
+    
+    void clear() {
+        blocks = new long[4][];
+        blockSizes = new int[4];
+        blockCount = 0;
+        size = 0;
+    }
+    
+    // Values from..to inclusive, ascending
+    void forEachInRange(long from, long to, LongConsumer action) {
+        if (blockCount == 0 || from > to) {
+            return;
+        }
+        int block = blockOf(from);
+        int position = lowerBound(block, from);
+        for (; block < blockCount; block++, position = 0) {
+            long[] values = blocks[block];
+            for (int end = blockSizes[block]; position < end; position++) {
+                if (values[position] > to) {
+                    return;
+                }
+                action.accept(values[position]);
+            }
+        }
+    }
+    
+    // Number of values from..to inclusive, summing whole blocks instead of walking them
+    int count(long from, long to) {
+        if (blockCount == 0 || from > to) {
+            return 0;
+        }
+        int first = blockOf(from);
+        int last = blockOf(to);
+        int count = lowerBound(last, to + 1) - lowerBound(first, from);
+        for (int block = first; block < last; block++) {
+            count += blockSizes[block];
+        }
+        return count;
+    }
+    
+    // Last block whose first value is at most the value, or the first block
+    private int blockOf(long value) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blocks[mid][0] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    // Position of the first value in the block that is at least the value
+    private int lowerBound(int block, long value) {
+        int position = Arrays.binarySearch(blocks[block], 0, blockSizes[block], value);
+        return position >= 0 ? position : -position - 1;
+    }
+    
+    private void insertBlock(int index, long[] values, int count) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+            blockSizes = Arrays.copyOf(blockSizes, blockCount * 2);
+        }
+        System.arraycopy(blocks, index, blocks, index + 1, blockCount - index);
+        System.arraycopy(blockSizes, index, blockSizes, index + 1, blockCount - index);
+        blocks[index] = values;
+        blockSizes[index] = count;
+        blockCount++;
+    }
+    
+    private void removeBlock(int index) {
+        System.arraycopy(blocks, index + 1, blocks, index, blockCount - index - 1);
+        System.arraycopy(blockSizes, index + 1, blockSizes, index, blockCount - index - 1);
+        blocks[--blockCount] = null;
+    }
+}
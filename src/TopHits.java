@@ -0,0 +1,97 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// The best hits of a ranked search seen so far, at most limit of them.
+// Each hit is packed into one long (match, distance, id; smaller is better)
+// and kept in a max-heap, so the worst kept hit is at the root and a
+// candidate that does not beat it costs one comparison and no allocation.
+final class TopHits {
+    private static final SearchHit.Match[] MATCHES = SearchHit.Match.values();
+    
+    private final int limit;
+    // Grows up to limit, which may be far more than the hits there are
+    private long[] heap;
+    private int size;
+    
+    TopHits(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        this.heap = new long[Math.min(limit, 16)];
+    }
+    
+    // False if the hit did not make the cut
+    boolean offer(int id, SearchHit.Match match, int distance) {
+        long key = ((long) match.ordinal() << 40) | ((long) Math.min(distance, 0xFF) << 32) | id;
+        if (size < limit) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, (int) Math.min(limit, size * 2L));
+            }
+            heap[size] = key;
+            siftUp(size++);
+            return true;
+        }
+        if (size == 0 || key >= heap[0]) {
+            return false;
+        }
+        heap[0] = key;
+        siftDown(0);
+        return true;
+    }
+    
+    // True once the kept hits all beat any hit of this kind, so the search
+    // can skip the remaining, weaker kinds
+    boolean isClosedTo(SearchHit.Match match) {
+        return size == limit && (size == 0 || (int) (heap[0] >>> 40) < match.ordinal());
+    }
+    
+    // Best first; contactOfId resolves the kept ids
+    List<SearchHit> toList(IntFunction<Contact> contactOfId) {
+        long[] keys = Arrays.copyOf(heap, size);
+        Arrays.sort(keys);
+        List<SearchHit> hits = new ArrayList<>(size);
+        for (long key : keys) {
+            Contact contact = contactOfId.apply((int) key);
+            // Null when another thread deleted the contact after it was offered
+            if (contact != null) {
+                hits.add(new SearchHit(contact, MATCHES[(int) (key >>> 40)], (int) (key >>> 32) & 0xFF));
+            }
+        }
+        return hits;
+    }
+    
+    private void siftUp(int index) {
+        long key = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] >= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+    
+    private void siftDown(int index) {
+        long key = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (key >= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+}
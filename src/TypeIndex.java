@@ -0,0 +1,64 @@
+package com.ucas.addressbook;
+
+import java.util.BitSet;
+
+// One bitmap per contact type over contact ids (or ContactColumns rows), so
+// "all Work contacts" is a walk over set bits and a type filter on other
+// results is one bit test per contact.
+// Not thread-safe, see LockedIndexes.
+class TypeIndex {
+    private final BitSet[] bitsByType = new BitSet[ContactType.values().length];
+    
+    TypeIndex() {
+        for (int i = 0; i < bitsByType.length; i++) {
+            bitsByType[i] = new BitSet();
+        }
+    }
+    
+    void add(int bit, ContactType type) {
+        bitsByType[type.ordinal()].set(bit);
+    }
+    
+    // Without knowing the old type; clearing four bits is cheaper than looking it up
+    void remove(int bit) {
+        for (BitSet bits : bitsByType) {
+            bits.clear(bit);
+        }
+    }
+    
+    void update(int bit, ContactType type) {
+        remove(bit);
+        add(bit, type);
+    }
+    
+    boolean contains(ContactType type, int bit) {
+        return bitsByType[type.ordinal()].get(bit);
+    }
+    
+    int count(ContactType type) {
+        return bitsByType[type.ordinal()].cardinality();
+    }
+    
+    // Lowest bit of any type at or after from, -1 if there is none
+    int nextBit(int from) {
+        int next = -1;
+        for (BitSet bits : bitsByType) {
+            int bit = bits.nextSetBit(from);
+            if (bit >= 0 && (next < 0 || bit < next)) {
+                next = bit;
+            }
+        }
+        return next;
+    }
+    
+    // Live bitmap, callers must not modify it
+    BitSet bits(ContactType type) {
+        return bitsByType[type.ordinal()];
+    }
+    
+    void clear() {
+        for (BitSet bits : bitsByType) {
+            bits.clear();
+        }
+    }
+}
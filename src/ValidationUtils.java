@@ -3,108 +3,98 @@ package com.ucas.addressbook;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.regex.Pattern;
 
+// Stateless, one instance can be shared between threads
 public class ValidationUtils {
+    // Letters, spaces, hyphens, apostrophes, compiled once instead of per String.matches call
+    private static final Pattern NAME_PATTERN = Pattern.compile("^[\\p{L} .'-]+$");
+    
     private static final Set<String> RESERVED_NUMBERS = new HashSet<>(
         Arrays.asList("911", "112", "999", "100", "101")
     );
     
-    private static final Set<String> ALLOWED_TYPES = new HashSet<>(
-        Arrays.asList("Family", "Personal", "Work", "Other")
-    );
-    
     public boolean isValidName(String name) {
+        return checkName(name).isSuccess();
+    }
+    
+    // OperationResult.OK, or why the name is invalid
+    public OperationResult checkName(String name) {
         if (name == null || name.trim().isEmpty()) {
-            System.out.println(" Error: Name cannot be empty.");
-            return false;
+            return OperationResult.NAME_EMPTY;
         }
         
         if (name.trim().length() < 2) {
-            System.out.println(" Error: Name must be at least 2 characters.");
-            return false;
+            return OperationResult.NAME_TOO_SHORT;
         }
         
         // Check for valid characters (letters, spaces, hyphens, apostrophes)
-        if (!name.matches("^[\\p{L} .'-]+$")) {
-            System.out.println("Error: Name contains invalid characters.");
-            return false;
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            return OperationResult.NAME_INVALID_CHARACTERS;
         }
         
-        return true;
+        return OperationResult.OK;
     }
     
     public boolean isValidType(String type) {
-        if (type == null || type.trim().isEmpty()) {
-            return false;
-        }
-        
-        for (String allowedType : ALLOWED_TYPES) {
-            if (allowedType.equalsIgnoreCase(type.trim())) {
-                return true;
-            }
-        }
-        
-        return false;
+        return ContactType.parse(type) != null;
+    }
+    
+    public OperationResult checkType(String type) {
+        return isValidType(type) ? OperationResult.OK : OperationResult.TYPE_INVALID;
     }
     
     public boolean isValidPhoneNumber(String phone) {
-        if (phone == null || phone.trim().isEmpty()) {
-            System.out.println("❌ Error: Phone number cannot be empty.");
-            return false;
+        return checkPhone(phone).isValid();
+    }
+    
+    // OperationResult.OK, or why the number is invalid
+    public OperationResult checkPhoneNumber(String phone) {
+        return checkPhone(phone).getResult();
+    }
+    
+    // Validates and normalizes in one pass over the digits
+    public PhoneCheck checkPhone(String phone) {
+        if (phone == null || phone.isBlank()) {
+            return new PhoneCheck("", "", OperationResult.PHONE_EMPTY);
         }
         
         // Remove any non-digit characters
-        String digitsOnly = phone.replaceAll("[^0-9]", "");
+        String digitsOnly = PhoneNumbers.digitsOf(phone);
+        String normalized = PhoneNumbers.normalize(digitsOnly);
         
         if (digitsOnly.isEmpty()) {
-            System.out.println("Error: Phone number must contain digits.");
-            return false;
+            return new PhoneCheck(digitsOnly, normalized, OperationResult.PHONE_NO_DIGITS);
         }
         
-        // Check length (adjust based on your country)
-        if (digitsOnly.length() < 7 || digitsOnly.length() > 15) {
-            System.out.println("Error: Phone number must be 7-15 digits.");
-            return false;
+        // Reserved numbers are all shorter than the minimum length, so they
+        // are checked first to report why they are rejected
+        if (RESERVED_NUMBERS.contains(digitsOnly)) {
+            return new PhoneCheck(digitsOnly, normalized, OperationResult.failure(OperationResult.Code.PHONE_RESERVED,
+                OperationResult.Field.PHONE, digitsOnly + " is a reserved emergency number."));
         }
         
-        // Check if it's a reserved number
-        if (isReservedNumber(digitsOnly)) {
-            System.out.println("Error: " + digitsOnly + " is a reserved emergency number.");
-            return false;
+        // Check length (adjust based on your country)
+        if (digitsOnly.length() < 7 || digitsOnly.length() > 15) {
+            return new PhoneCheck(digitsOnly, normalized, OperationResult.PHONE_INVALID_LENGTH);
         }
         
-        return true;
+        return new PhoneCheck(digitsOnly, normalized, OperationResult.OK);
     }
     
     public boolean isReservedNumber(String phone) {
-        String digitsOnly = phone.replaceAll("[^0-9]", "");
-        return RESERVED_NUMBERS.contains(digitsOnly);
+        return RESERVED_NUMBERS.contains(PhoneNumbers.digitsOf(phone));
     }
     
     public String standardizeType(String type) {
-        if (type == null) return "Other";
-        
-        for (String allowedType : ALLOWED_TYPES) {
-            if (allowedType.equalsIgnoreCase(type.trim())) {
-                return allowedType;
-            }
-        }
-        
-        return "Other";
+        return ContactType.standardize(type).getDisplayName();
     }
     
     public String validateAndCleanPhone(String phone) {
         if (phone == null) return "";
         
-        // Remove all non-digit characters
-        String cleaned = phone.replaceAll("[^0-9]", "");
-        
-        // Add country code if missing (assuming Palestine +970)
-        if (cleaned.startsWith("0") && cleaned.length() == 10) {
-            cleaned = "970" + cleaned.substring(1);
-        }
-        
-        return cleaned;
+        // Remove all non-digit characters, add the country code if missing
+        return PhoneNumbers.normalize(PhoneNumbers.digitsOf(phone));
     }
     
     public boolean isDuplicateNumberAllowed() {
@@ -114,7 +104,12 @@ public class ValidationUtils {
     
     // Get all allowed types for display purposes
     public String[] getAllowedTypes() {
-        return ALLOWED_TYPES.toArray(new String[0]);
+        ContactType[] types = ContactType.values();
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            names[i] = types[i].getDisplayName();
+        }
+        return names;
     }
     
     // Get all reserved numbers for display purposes
@@ -0,0 +1,139 @@
+package com.ucas.addressbook;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Maps spelling variants of common Arabic/English names to one canonical key,
+// so "mohamad", "muhammad" and "محمد" all become "mohamed".
+// Extra groups can be loaded from a text file, one group per line:
+//   mohamed, mohamad, mohammed, muhammad, محمد
+// The first entry is the canonical key; lines starting with '#' are ignored.
+public class VariationDictionary {
+    // Optional file with extra groups for the default dictionary
+    public static final String FILE_PROPERTY = "addressbook.variations";
+    
+    private static final String[][] BUILT_IN_GROUPS = {
+        {"mohamed", "mohamad", "mohammed", "muhammad", "محمد"},
+        {"ahmed", "ahmad", "احمد"},
+        {"ali", "aly", "علي"},
+        {"yousef", "yusuf", "youssef", "يوسف"},
+        {"khaled", "khalid", "خالد"},
+        {"osama", "usama", "اسامة"},
+        {"hassan", "hassaan", "حسن"},
+        {"ibrahim", "ibraheem", "ابراهيم"},
+        {"nour", "noor", "نور"},
+        {"fatima", "fatma", "fatimah", "فاطمة"}
+    };
+    
+    private static VariationDictionary defaultDictionary;
+    // Why the addressbook.variations file could not be read, null if it was
+    private static IOException loadFailure;
+    
+    // Lower-case variant -> canonical key
+    private final Map<String, String> canonicalForms = new HashMap<>();
+    
+    // Built-in groups plus the file named by the addressbook.variations
+    // property. A file that cannot be read is left out, see getLoadFailure().
+    public static synchronized VariationDictionary getDefault() {
+        if (defaultDictionary == null) {
+            VariationDictionary dictionary = new VariationDictionary();
+            for (String[] group : BUILT_IN_GROUPS) {
+                dictionary.addGroup(group);
+            }
+            
+            String file = System.getProperty(FILE_PROPERTY);
+            if (file != null) {
+                try {
+                    dictionary.load(Paths.get(file));
+                } catch (IOException e) {
+                    loadFailure = e;
+                }
+            }
+            defaultDictionary = dictionary;
+        }
+        return defaultDictionary;
+    }
+    
+    // Left for the application to report, null if the file loaded or none is set
+    public static synchronized IOException getLoadFailure() {
+        getDefault();
+        return loadFailure;
+    }
+    
+    // First variant is the canonical key
+    public void addGroup(String... variants) {
+        if (variants.length == 0) {
+            return;
+        }
+        String canonical = NGramIndex.normalize(variants[0].trim());
+        for (String variant : variants) {
+            String key = NGramIndex.normalize(variant.trim());
+            if (!key.isEmpty()) {
+                canonicalForms.put(key, canonical);
+            }
+        }
+    }
+    
+    public void load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            load(reader);
+        }
+    }
+    
+    public void load(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            addGroup(line.split(","));
+        }
+    }
+    
+    // Canonical key of a single word, or null when it has no known variants
+    public String canonicalize(String word) {
+        return canonicalForms.get(NGramIndex.normalize(word));
+    }
+    
+    // Canonical keys of every known word in a full name
+    public Set<String> canonicalKeys(String name) {
+        Set<String> keys = null;
+        for (String word : FuzzyNameIndex.words(NGramIndex.normalize(name))) {
+            String canonical = canonicalForms.get(word);
+            if (canonical != null) {
+                if (keys == null) {
+                    keys = new HashSet<>(2);
+                }
+                keys.add(canonical);
+            }
+        }
+        return keys == null ? Collections.emptySet() : keys;
+    }
+    
+    // Every spelling whose canonical key is one of the given keys
+    Set<String> variantsOf(Set<String> keys) {
+        Set<String> variants = new HashSet<>();
+        for (Map.Entry<String, String> entry : canonicalForms.entrySet()) {
+            if (keys.contains(entry.getValue())) {
+                variants.add(entry.getKey());
+            }
+        }
+        return variants;
+    }
+    
+    public int size() {
+        return canonicalForms.size();
+    }
+}
@@ -0,0 +1,63 @@
+package com.ucas.addressbook;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Canonical name key -> contacts, with each contact's keys computed once at insert time
+class VariationIndex {
+    private final VariationDictionary dictionary;
+    private final Map<String, Set<Contact>> contactsByKey = new HashMap<>();
+    private final Map<Contact, Set<String>> indexedKeys = new HashMap<>();
+    
+    VariationIndex(VariationDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+    
+    void add(Contact contact) {
+        Set<String> keys = dictionary.canonicalKeys(contact.getName());
+        if (keys.isEmpty()) {
+            return;
+        }
+        indexedKeys.put(contact, keys);
+        for (String key : keys) {
+            contactsByKey.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(contact);
+        }
+    }
+    
+    void remove(Contact contact) {
+        Set<String> keys = indexedKeys.remove(contact);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            Set<Contact> matches = contactsByKey.get(key);
+            if (matches != null && matches.remove(contact) && matches.isEmpty()) {
+                contactsByKey.remove(key);
+            }
+        }
+    }
+    
+    void clear() {
+        contactsByKey.clear();
+        indexedKeys.clear();
+    }
+    
+    // Contacts sharing a canonical key with any word of the query, in id order
+    List<Contact> search(String query) {
+        Set<Contact> matches = new LinkedHashSet<>();
+        for (String key : dictionary.canonicalKeys(query)) {
+            Set<Contact> contacts = contactsByKey.get(key);
+            if (contacts != null) {
+                matches.addAll(contacts);
+            }
+        }
+        List<Contact> results = new ArrayList<>(matches);
+        results.sort(Comparator.comparingInt(Contact::getId));
+        return results;
+    }
+}
@@ -6,10 +6,41 @@ Testing business logic and operations
 
 package com.ucas.addressbook.tests;
 
+import com.ucas.addressbook.AtomicIdAllocator;
+import com.ucas.addressbook.BlockIdAllocator;
+import com.ucas.addressbook.ColumnarContactManager;
+import com.ucas.addressbook.ConcurrentContactManager;
 import com.ucas.addressbook.Contact;
+import com.ucas.addressbook.ContactGenerator;
 import com.ucas.addressbook.ContactManager;
+import com.ucas.addressbook.ContactMetrics;
+import com.ucas.addressbook.ContactPage;
+import com.ucas.addressbook.ContactQuery;
+import com.ucas.addressbook.ContactType;
+import com.ucas.addressbook.ImportRecord;
+import com.ucas.addressbook.ImportReport;
+import com.ucas.addressbook.InstrumentedContactManager;
+import com.ucas.addressbook.OperationResult;
+import com.ucas.addressbook.SearchHit;
+import com.ucas.addressbook.SlowQueryLog;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -116,6 +147,19 @@ class ContactManagerTest {
         assertTrue(results.isEmpty());
     }
     
+    @Test
+    @DisplayName("Test Search By Name - Renamed Contact")
+    void testSearchByNameAfterRename() {
+        contactManager.addContact("Alice Wonderland", "Personal", "1111111111", false);
+        contactManager.getAllContacts().get(0).setName("Zed Zebra");
+        
+        assertTrue(contactManager.searchByName("Wonder", false).isEmpty());
+        assertEquals(1, contactManager.searchByName("ZEBR", false).size());
+        
+        contactManager.deleteByName("Zed Zebra");
+        assertTrue(contactManager.searchByName("Zebra", false).isEmpty());
+    }
+    
     @Test
     @DisplayName("Test Search By Name - Fuzzy Match (Bonus)")
     void testSearchByNameFuzzy() {
@@ -137,6 +181,24 @@ class ContactManagerTest {
         assertTrue(results.isEmpty());
     }
     
+    @Test
+    @DisplayName("Test Search By Name Fuzzy - Ranked By Edit Distance")
+    void testSearchByNameFuzzyRanked() {
+        contactManager.addContact("Mohammad Ahmad", "Work", "2222222222", false);
+        contactManager.addContact("Mohamed Ahmed", "Personal", "1111111111", false);
+        contactManager.addContact("John Smith", "Other", "4444444444", false);
+        
+        List<Contact> results = contactManager.searchByNameFuzzy("Mohamad Ahmed", 2);
+        assertEquals(2, results.size());
+        assertEquals("Mohamed Ahmed", results.get(0).getName(), "Closest spelling first");
+        
+        // Transposed letters count as one edit
+        results = contactManager.searchByNameFuzzy("Jonh", 1);
+        assertEquals(1, results.size());
+        
+        assertTrue(contactManager.searchByNameFuzzy("Zzzzzz", 2).isEmpty());
+    }
+    
     @Test
     @DisplayName("Test Search By Number - Exact Match")
     void testSearchByNumberExact() {
@@ -163,6 +225,35 @@ class ContactManagerTest {
         assertEquals(1, results.size());
     }
     
+    @Test
+    @DisplayName("Test Search By Number - Formatting Ignored")
+    void testSearchByNumberNormalized() {
+        contactManager.addContact("Formatted", "Personal", "059-912-3456", false);
+        
+        List<Contact> results = contactManager.searchByNumber("0599123456");
+        assertEquals(1, results.size());
+        
+        // Same number in another format counts as a duplicate
+        assertFalse(contactManager.addContact("Copy", "Work", "0599 123 456", false));
+        assertEquals(1, contactManager.getContactCount());
+    }
+    
+    @Test
+    @DisplayName("Test Number Index - Direct Contact Edits")
+    void testNumberIndexFollowsContactEdits() {
+        contactManager.addContact("Editor", "Personal", "1111111111", false);
+        Contact contact = contactManager.getAllContacts().get(0);
+        
+        // Numbers added on the contact itself are searchable
+        assertTrue(contact.addPhoneNumber("2222222222"));
+        assertEquals(1, contactManager.searchByNumber("2222222222").size());
+        
+        // Removed numbers are no longer found and can be reused
+        assertTrue(contact.removePhoneNumber("2222222222"));
+        assertTrue(contactManager.searchByNumber("2222222222").isEmpty());
+        assertTrue(contactManager.addContact("Reuser", "Work", "2222222222", false));
+    }
+    
     @Test
     @DisplayName("Test Delete By Name - Exact Match")
     void testDeleteByNameExact() {
@@ -214,6 +305,17 @@ class ContactManagerTest {
         assertEquals(0, contactManager.getContactCount());
     }
     
+    @Test
+    @DisplayName("Test Delete By Name - After Rename")
+    void testDeleteByNameAfterRename() {
+        contactManager.addContact("Old Name", "Personal", "1111111111", false);
+        contactManager.getAllContacts().get(0).setName("New Name");
+        
+        assertEquals(0, contactManager.deleteByName("Old Name"));
+        assertEquals(1, contactManager.deleteByName("new name"));
+        assertEquals(0, contactManager.getContactCount());
+    }
+    
     @Test
     @DisplayName("Test Delete By Number")
     void testDeleteByNumber() {
@@ -373,4 +475,647 @@ class ContactManagerTest {
         assertEquals(1, deleted);
         assertEquals(0, contactManager.getContactCount());
     }
+    
+    @Test
+    @DisplayName("Test Persistence - Contacts Survive Restart")
+    void testPersistenceAcrossRestart(@TempDir Path dataDirectory) throws Exception {
+        ContactManager saved = new ContactManager(dataDirectory);
+        saved.addContact("Kept", "Family", "0599111111", true);
+        saved.addContact("Kept", "Family", "0599222222", true);
+        saved.addContact("Dropped", "Work", "0599333333", false);
+        saved.deleteByName("Dropped");
+        saved.saveSnapshot();
+        // Changed after the snapshot, saved again by close()
+        saved.addContact("Late", "Other", "0599444444", false);
+        saved.getAllContacts().get(0).setName("Kept Renamed");
+        saved.close();
+        
+        ContactManager restored = new ContactManager(dataDirectory);
+        assertEquals(2, restored.getContactCount());
+        assertEquals(2, restored.searchByNumber("0599222222").get(0).getPhoneNumbers().size());
+        assertEquals("Kept Renamed", restored.searchByNumber("0599111111").get(0).getName());
+        assertTrue(restored.searchByNumber("0599333333").isEmpty());
+        assertEquals(1, restored.searchByName("Late", false).size());
+        restored.close();
+    }
+    
+    @Test
+    @DisplayName("Test Persistence - Log Replayed Without Clean Close")
+    void testLogReplayedWithoutClose(@TempDir Path dataDirectory) throws Exception {
+        ContactManager crashed = new ContactManager(dataDirectory);
+        crashed.addContact("Kept", "Family", "0599111111", true);
+        crashed.addContact("Dropped", "Work", "0599333333", false);
+        crashed.saveSnapshot();
+        // Only in the log: the manager is never closed, so no final snapshot
+        crashed.addContact("Kept", "Family", "0599222222", true);
+        crashed.deleteByName("Dropped");
+        crashed.addContact("Late", "Other", "0599444444", false);
+        crashed.searchByNumber("0599111111").get(0).setName("Kept Renamed");
+        
+        ContactManager restored = new ContactManager(dataDirectory);
+        assertEquals(2, restored.getContactCount());
+        assertEquals(2, restored.searchByNumber("0599222222").get(0).getPhoneNumbers().size());
+        assertEquals("Kept Renamed", restored.searchByNumber("0599111111").get(0).getName());
+        assertTrue(restored.searchByNumber("0599333333").isEmpty());
+        assertEquals(1, restored.searchByName("Late", false).size());
+        restored.close();
+    }
+    
+    @Test
+    @DisplayName("Test Persistence - Torn Log Tail Dropped")
+    void testTornLogTailDropped(@TempDir Path dataDirectory) throws Exception {
+        ContactManager crashed = new ContactManager(dataDirectory);
+        crashed.addContact("First", "Family", "0599111111", false);
+        crashed.addContact("Second", "Work", "0599222222", false);
+        
+        // Cut the last record short, as a crash in the middle of a write would
+        Path log = dataDirectory.resolve("contacts.log");
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, Arrays.copyOf(bytes, bytes.length - 5));
+        
+        ContactManager recovered = new ContactManager(dataDirectory);
+        assertEquals(1, recovered.getContactCount());
+        assertEquals("First", recovered.searchByNumber("0599111111").get(0).getName());
+        assertTrue(recovered.searchByNumber("0599222222").isEmpty());
+        
+        // Appended after the last good record, not after the torn bytes
+        recovered.addContact("Third", "Other", "0599333333", false);
+        ContactManager reopened = new ContactManager(dataDirectory);
+        assertEquals(2, reopened.getContactCount());
+        assertEquals("First", reopened.searchByNumber("0599111111").get(0).getName());
+        assertEquals("Third", reopened.searchByNumber("0599333333").get(0).getName());
+        reopened.close();
+    }
+    
+    @Test
+    @DisplayName("Test Persistence - Snapshot Loaded On Demand")
+    void testSnapshotLoadedOnDemand(@TempDir Path dataDirectory) throws Exception {
+        ContactManager saved = new ContactManager(dataDirectory);
+        saved.addContact("First Saved", "Family", "0599111111", false);
+        saved.addContact("Second Saved", "Work", "0599222222", false);
+        saved.close();
+        
+        ContactManager restored = new ContactManager(dataDirectory);
+        assertEquals(2, restored.getContactCount());
+        assertEquals("Second Saved", restored.searchByNumber("0599222222").get(0).getName());
+        // Saved numbers are still duplicates before their contact is decoded
+        assertFalse(restored.addContact("Copy", "Other", "0599111111", false));
+        assertEquals(1, restored.deleteByName("first saved"));
+        
+        // Listing decodes the rest in saved order
+        restored.addContact("Third", "Other", "0599333333", false);
+        List<Contact> all = restored.getAllContacts();
+        assertEquals(2, all.size());
+        assertEquals("Second Saved", all.get(0).getName());
+        assertEquals("Third", all.get(1).getName());
+        restored.close();
+    }
+    
+    @Test
+    @DisplayName("Test Persistence - Older Formats Rejected")
+    void testOlderStorageFormatsRejected(@TempDir Path dataDirectory) throws Exception {
+        ContactManager saved = new ContactManager(dataDirectory);
+        saved.addContact("Saved", "Family", "0599111111", false);
+        saved.close();
+        
+        // A snapshot written while numbers were stored as strings
+        Path snapshot = dataDirectory.resolve("contacts.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[3] = '2';
+        Files.write(snapshot, bytes);
+        boolean rejected = false;
+        try {
+            new ContactManager(dataDirectory);
+        } catch (IOException e) {
+            rejected = e.getMessage().contains("ABS2");
+        }
+        assertTrue(rejected);
+        
+        // A log from before the header, starting with a record length
+        Files.delete(snapshot);
+        Files.write(dataDirectory.resolve("contacts.log"), new byte[] { 0, 0, 0, 21, 0, 0, 0, 0, 0, 0, 0, 1 });
+        rejected = false;
+        try {
+            new ContactManager(dataDirectory);
+        } catch (IOException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+    
+    @Test
+    @DisplayName("Test Concurrent Manager - Number Stays Unique")
+    void testConcurrentAddKeepsNumbersUnique() throws Exception {
+        ConcurrentContactManager shared = new ConcurrentContactManager();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+        
+        // Every thread races to add the same number under a different name
+        for (int i = 0; i < 32; i++) {
+            String name = "Racer " + (char) ('a' + i % 26) + (char) ('a' + i / 26);
+            attempts.add(threads.submit(() -> shared.addContact(name, "Work", "0599123456", false)));
+        }
+        
+        int added = 0;
+        for (Future<Boolean> attempt : attempts) {
+            if (attempt.get()) {
+                added++;
+            }
+        }
+        threads.shutdown();
+        
+        assertEquals(1, added);
+        assertEquals(1, shared.getContactCount());
+        assertEquals(1, shared.searchByNumber("0599123456").size());
+    }
+    
+    @Test
+    @DisplayName("Test Concurrent Manager - Same Name Merged And Trimmed")
+    void testConcurrentSameNameMergedAndTrimmed() throws Exception {
+        ConcurrentContactManager shared = new ConcurrentContactManager();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> adds = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            String number = String.format("05991000%02d", i);
+            adds.add(threads.submit(() -> shared.addContact("Shared Name", "Family", number, true)));
+        }
+        for (Future<Boolean> add : adds) {
+            assertTrue(add.get());
+        }
+        assertEquals(1, shared.getContactCount());
+        assertEquals(16, shared.searchByNumber("0599100000").get(0).getPhoneNumberCount());
+        
+        // Deleting all but one number at once must leave the contact with that number
+        List<Future<Boolean>> deletes = new ArrayList<>();
+        for (int i = 1; i < 16; i++) {
+            String number = String.format("05991000%02d", i);
+            deletes.add(threads.submit(() -> shared.deleteByNumber(number)));
+        }
+        for (Future<Boolean> delete : deletes) {
+            assertTrue(delete.get());
+        }
+        threads.shutdown();
+        
+        assertEquals(1, shared.getContactCount());
+        assertEquals(List.of("0599100000"), shared.searchByNumber("0599100000").get(0).getPhoneNumbers());
+        assertTrue(shared.searchByNumber("0599100015").isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Test Contact Ids - Unique Across Threads")
+    void testContactIdsUniqueAcrossThreads() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<List<Integer>>> batches = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            batches.add(threads.submit(() -> {
+                List<Integer> ids = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    ids.add(new Contact("Parallel", "Work", "0599000000").getId());
+                }
+                return ids;
+            }));
+        }
+        
+        Set<Integer> seen = new HashSet<>();
+        for (Future<List<Integer>> batch : batches) {
+            for (int id : batch.get()) {
+                assertTrue(seen.add(id), "Duplicate id " + id);
+            }
+        }
+        threads.shutdown();
+    }
+    
+    @Test
+    @DisplayName("Test Contact Ids - Block Reservation")
+    void testBlockIdAllocator() {
+        AtomicIdAllocator shared = new AtomicIdAllocator(100);
+        BlockIdAllocator first = new BlockIdAllocator(shared, 10);
+        BlockIdAllocator second = new BlockIdAllocator(shared, 10);
+        
+        assertEquals(101, first.nextId());
+        assertEquals(111, second.nextId());
+        assertEquals(102, first.nextId());
+        // The shared counter moved once per block, not once per id
+        assertEquals(120, shared.highWaterMark());
+    }
+    
+    @Test
+    @DisplayName("Test Bulk Import - Rejections Reported Per Row")
+    void testImportContacts() {
+        contactManager.addContact("Existing", "Work", "0599000001", false);
+        String csv = "name,type,phone\n"
+            + "Ali Hassan,Family,0599111111\n"
+            + "Ali Hassan,Family,0599222222\n"
+            + "Bad1,Work,0599333333\n"
+            + "Copy,Work,059-911-1111\n"
+            + "Existing,Other,0599444444\n";
+        
+        ImportReport report = contactManager.importContacts(
+            ImportRecord.readCsv(new BufferedReader(new StringReader(csv))), true);
+        
+        assertEquals(1, report.getContactsAdded());
+        assertEquals(2, report.getNumbersMerged());
+        assertEquals(2, report.getRejections().size());
+        assertEquals(4, report.getRejections().get(0).getLine());
+        assertEquals(5, report.getRejections().get(1).getLine());
+        
+        // Imported contacts are indexed like added ones
+        assertEquals(2, contactManager.getContactCount());
+        assertEquals(1, contactManager.searchByName("hass", false).size());
+        assertEquals("Existing", contactManager.searchByNumber("0599444444").get(0).getName());
+    }
+    
+    @Test
+    @DisplayName("Test Bulk Import - Ids Reserved Per Batch")
+    void testImportReservesIdsForBatch() {
+        String csv = "name,type,phone\nSingle Row,Work,0599111111\n";
+        int before = Contact.getIdAllocator().highWaterMark();
+        contactManager.importContacts(ImportRecord.readCsv(new BufferedReader(new StringReader(csv))), false);
+        
+        // A one-row import takes one id, not a whole default block
+        assertEquals(before + 1, Contact.getIdAllocator().highWaterMark());
+        
+        ColumnarContactManager columnar = new ColumnarContactManager();
+        before = Contact.getIdAllocator().highWaterMark();
+        columnar.importContacts(ImportRecord.readCsv(new BufferedReader(new StringReader(csv))), false);
+        assertEquals(before + 1, Contact.getIdAllocator().highWaterMark());
+    }
+    
+    @Test
+    @DisplayName("Test Add Contact - Structured Result")
+    void testTryAddContactResult() {
+        OperationResult added = contactManager.tryAddContact("Result User", "Work", "0599123456", true);
+        assertEquals(OperationResult.Code.CONTACT_ADDED, added.getCode());
+        assertEquals("Result User", added.getContact().getName());
+        
+        OperationResult merged = contactManager.tryAddContact("Result User", "Work", "0599654321", true);
+        assertEquals(OperationResult.Code.NUMBER_ADDED, merged.getCode());
+        
+        OperationResult duplicate = contactManager.tryAddContact("Other", "Work", "059-912-3456", false);
+        assertFalse(duplicate.isSuccess());
+        assertEquals(OperationResult.Code.NUMBER_EXISTS, duplicate.getCode());
+        assertEquals(OperationResult.Field.PHONE, duplicate.getField());
+        
+        OperationResult badName = contactManager.tryAddContact("", "Work", "0599000000", false);
+        assertEquals(OperationResult.Code.NAME_EMPTY, badName.getCode());
+        assertEquals(OperationResult.Field.NAME, badName.getField());
+    }
+    
+    @Test
+    @DisplayName("Test Phone Numbers - Canonical Form")
+    void testCanonicalPhoneNumbers() {
+        contactManager.addContact("Canon", "Work", "+970 599-123-456", false);
+        Contact contact = contactManager.searchByNumber("0599123456").get(0);
+        
+        // Any formatting of the same number matches, display keeps the local form
+        assertTrue(contact.hasPhoneNumber("(0599) 123 456"));
+        assertTrue(contact.hasPhoneNumber("970599123456"));
+        assertEquals(List.of("0599123456"), contact.getPhoneNumbers());
+        assertFalse(contact.addPhoneNumber("0599-123-456"));
+        
+        // Leading zeros are part of the number
+        assertTrue(contact.addPhoneNumber("0022345678"));
+        assertFalse(contact.hasPhoneNumber("22345678"));
+        assertEquals(List.of("0599123456", "0022345678"), contact.getPhoneNumbers());
+    }
+    
+    @Test
+    @DisplayName("Test Columnar Manager - Same Behavior")
+    void testColumnarContactManager() {
+        ContactManager columnar = new ColumnarContactManager();
+        assertTrue(columnar.addContact("Ali Hassan", "Work", "0599111111", true));
+        assertTrue(columnar.addContact("ali hassan", "Work", "0599222222", true));
+        assertTrue(columnar.addContact("Sara", "Family", "0599333333", false));
+        assertFalse(columnar.addContact("Other", "Work", "059-933-3333", false));
+        
+        assertEquals(2, columnar.getContactCount());
+        assertEquals(2, columnar.searchByNumber("0599222222").get(0).getPhoneNumbers().size());
+        assertEquals(1, columnar.searchByName("HASS", false).size());
+        assertEquals("Ali Hassan", columnar.searchByNameFuzzy("Aly Hasan", 2).get(0).getName());
+        
+        // Edits on a returned contact are written back
+        Contact sara = columnar.searchByNumber("0599333333").get(0);
+        sara.setName("Sarah");
+        assertTrue(sara.addPhoneNumber("0599444444"));
+        assertFalse(sara.addPhoneNumber("0599111111"));
+        assertEquals("Sarah", columnar.searchByNumber("0599444444").get(0).getName());
+        
+        assertTrue(columnar.deleteByNumber("0599111111"));
+        assertEquals(2, columnar.getContactCount());
+        assertEquals(1, columnar.deleteByName("ALI HASSAN"));
+        assertEquals(1, columnar.getAllContacts().size());
+        assertTrue(columnar.searchByNumber("0599222222").isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Test Columnar Manager - Many Contacts With One Name")
+    void testColumnarManySameName() {
+        ColumnarContactManager columnar = new ColumnarContactManager();
+        int first = -1;
+        for (int i = 0; i < 3000; i++) {
+            OperationResult added = columnar.tryAddContact("Common Name", "Work", String.format("059%07d", i), false);
+            assertEquals(OperationResult.Code.CONTACT_ADDED, added.getCode());
+            if (i == 0) {
+                first = added.getContact().getId();
+            }
+        }
+        
+        // Merging goes to the oldest contact with the name
+        OperationResult merged = columnar.tryAddContact("COMMON NAME", "Work", "0568000000", true);
+        assertEquals(OperationResult.Code.NUMBER_ADDED, merged.getCode());
+        assertEquals(first, merged.getContact().getId());
+        assertEquals(3000, columnar.search(ContactQuery.nameEquals("common name")).size());
+        assertEquals(3000, columnar.deleteByName("Common Name"));
+        assertEquals(0, columnar.getContactCount());
+    }
+    
+    @Test
+    @DisplayName("Test Columnar Manager - Fuzzy Matches Like Indexed")
+    void testColumnarFuzzyMatchesIndexed() {
+        ContactManager columnar = new ColumnarContactManager();
+        String[] names = { "Mohamed Ali", "MUHAMMAD O'Brien", "Khaled Jean-Luc", "Sara  Hassan", "Ahmad", "Noor Omar" };
+        for (int i = 0; i < names.length; i++) {
+            String number = String.format("059900000%d", i);
+            contactManager.addContact(names[i], "Work", number, false);
+            columnar.addContact(names[i], "Work", number, false);
+        }
+        
+        for (String query : new String[] { "mohammed", "Khalid Jean", "obrien", "Sarah Hasan", "AHMED", "nour" }) {
+            assertEquals(
+                contactManager.searchByNameFuzzy(query, 2).stream().map(Contact::getName).collect(Collectors.toList()),
+                columnar.searchByNameFuzzy(query, 2).stream().map(Contact::getName).collect(Collectors.toList()),
+                "Fuzzy search for " + query);
+            assertEquals(
+                contactManager.searchByName(query, true).stream().map(Contact::getName).collect(Collectors.toSet()),
+                columnar.searchByName(query, true).stream().map(Contact::getName).collect(Collectors.toSet()),
+                "Variation search for " + query);
+        }
+    }
+    
+    @Test
+    @DisplayName("Test Search By Type - Type Index")
+    void testSearchByType() {
+        contactManager.addContact("Ali Hassan", "family", "0599111111", false);
+        contactManager.addContact("Ali Omar", "Work", "0599222222", false);
+        contactManager.addContact("Sara Ali", "FAMILY", "0599333333", false);
+        
+        List<Contact> family = contactManager.searchByType(ContactType.FAMILY);
+        assertEquals(2, family.size());
+        assertEquals("Family", family.get(0).getType());
+        assertEquals(1, contactManager.searchByNameAndType("ali", ContactType.WORK).size());
+        
+        // Edits and deletes keep the index in sync
+        family.get(0).setType(ContactType.WORK);
+        assertEquals(2, contactManager.searchByNameAndType("ali", ContactType.WORK).size());
+        contactManager.deleteByNumber("0599333333");
+        assertTrue(contactManager.searchByType(ContactType.FAMILY).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Test Search - Combined Query")
+    void testSearchQuery() {
+        contactManager.addContact("Ali Hassan", "Family", "0599111111", false);
+        contactManager.addContact("Ali Omar", "Work", "0599222222", false);
+        contactManager.addContact("Sara Ali", "Family", "0568333333", false);
+        contactManager.addContact("Omar Saleh", "Family", "0599444444", false);
+        
+        ContactQuery familyAli = ContactQuery.type(ContactType.FAMILY).and(ContactQuery.nameContains("ALI"));
+        List<Contact> results = contactManager.search(familyAli);
+        assertEquals(2, results.size());
+        assertEquals("Ali Hassan", results.get(0).getName());
+        
+        // NOT has no index, the smaller of the type and prefix lookups drives
+        ContactQuery query = ContactQuery.type(ContactType.FAMILY)
+            .and(ContactQuery.numberPrefix("0599"))
+            .and(ContactQuery.nameEquals("omar saleh").not());
+        assertEquals("Ali Hassan", contactManager.search(query).get(0).getName());
+        assertEquals(1, contactManager.search(query).size());
+        
+        ContactQuery either = ContactQuery.number("059-922-2222").or(ContactQuery.nameContains("saleh"));
+        assertEquals(2, contactManager.search(either).size());
+        
+        // Paging in id order
+        ContactQuery page = ContactQuery.nameContains("a").offset(1).limit(2);
+        results = contactManager.search(page);
+        assertEquals(2, results.size());
+        assertEquals("Ali Omar", results.get(0).getName());
+        assertEquals("Sara Ali", results.get(1).getName());
+    }
+    
+    @Test
+    @DisplayName("Test Search By Number - Prefix And Suffix")
+    void testSearchByNumberPrefix() {
+        contactManager.addContact("Ali Hassan", "Family", "0599111234", true);
+        contactManager.addContact("Ali Hassan", "Family", "0599221234", true);
+        contactManager.addContact("Sara Ali", "Work", "0568331234", false);
+        contactManager.addContact("Omar Saleh", "Work", "22987654", false);
+        
+        // As displayed or with the country code, one result per contact
+        assertEquals(1, contactManager.searchByNumberPrefix("0599").size());
+        assertEquals(2, contactManager.searchByNumberPrefix("9705").size());
+        assertEquals(2, contactManager.searchByNumberPrefix("0").size());
+        assertEquals("Omar Saleh", contactManager.searchByNumberPrefix("2298").get(0).getName());
+        assertTrue(contactManager.searchByNumberPrefix("0597").isEmpty());
+        
+        List<Contact> results = contactManager.searchByNumberSuffix("1234");
+        assertEquals(2, results.size());
+        assertEquals("Ali Hassan", results.get(0).getName());
+        assertEquals("Sara Ali", results.get(1).getName());
+        
+        // Edits and deletes keep the sorted numbers in sync
+        results.get(1).addPhoneNumber("0597000000");
+        assertEquals(1, contactManager.searchByNumberPrefix("0597").size());
+        contactManager.deleteByNumber("0568331234");
+        assertEquals(1, contactManager.searchByNumberSuffix("1234").size());
+        assertEquals(2, contactManager.search(ContactQuery.numberSuffix("654").or(ContactQuery.numberPrefix("0597"))).size());
+    }
+    
+    @Test
+    @DisplayName("Test Search Ranked - Best Matches First")
+    void testSearchRanked() {
+        contactManager.addContact("Hassan Ali", "Work", "0599111111", false);
+        contactManager.addContact("Malika Stone", "Work", "0599222222", false);
+        contactManager.addContact("Ali", "Family", "0599333333", false);
+        contactManager.addContact("Alice Brown", "Work", "0599444444", false);
+        contactManager.addContact("Aly Noor", "Work", "0599555555", false);
+        
+        List<SearchHit> hits = contactManager.searchRanked("ali", true, 10);
+        assertEquals(5, hits.size());
+        assertEquals("Ali", hits.get(0).getContact().getName());
+        assertEquals(SearchHit.Match.EXACT, hits.get(0).getMatch());
+        assertEquals(100, hits.get(0).getScore());
+        assertEquals(SearchHit.Match.PREFIX, hits.get(1).getMatch());
+        assertEquals("Hassan Ali", hits.get(2).getContact().getName());
+        assertEquals(SearchHit.Match.WORD_PREFIX, hits.get(2).getMatch());
+        assertEquals(SearchHit.Match.CONTAINS, hits.get(3).getMatch());
+        assertTrue(hits.get(3).getScore() > hits.get(4).getScore());
+        
+        // Only the best are kept, and without useFuzzy "Aly" is not a match
+        hits = contactManager.searchRanked("ALI", false, 2);
+        assertEquals(2, hits.size());
+        assertEquals("Alice Brown", hits.get(1).getContact().getName());
+        assertEquals(4, contactManager.searchRanked("ali", false, 10).size());
+        assertTrue(contactManager.searchRanked("ali", true, 0).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Test List Contacts - Pages Stay Consistent")
+    void testContactsPage() {
+        for (String name : List.of("Anna", "Bob", "Carl", "Dina", "Eve")) {
+            contactManager.addContact(name, "Work", "059900000" + name.length() + name.charAt(0) % 10, false);
+        }
+        assertEquals(5, contactManager.getContactCount());
+        
+        ContactPage page = contactManager.getContactsPage(null, 2);
+        assertEquals(2, page.getContacts().size());
+        assertEquals("Anna", page.getContacts().get(0).getName());
+        assertTrue(page.hasNext());
+        
+        // Deleting a listed contact and adding a new one between pages
+        contactManager.deleteByName("Anna");
+        contactManager.addContact("Finn", "Work", "0599111111", false);
+        page = contactManager.getContactsPage(page.getNextPageToken(), 2);
+        assertEquals("Carl", page.getContacts().get(0).getName());
+        page = contactManager.getContactsPage(page.getNextPageToken(), 2);
+        assertEquals("Eve", page.getContacts().get(0).getName());
+        assertEquals("Finn", page.getContacts().get(1).getName());
+        assertFalse(page.hasNext());
+        assertNull(page.getNextPageToken());
+        
+        assertEquals(5, contactManager.streamContacts().count());
+        assertEquals("Bob", contactManager.streamContacts().findFirst().get().getName());
+    }
+    
+    @Test
+    @DisplayName("Test Phone Numbers - Read-Only Views")
+    void testPhoneNumberViews() {
+        contactManager.addContact("Maya", "Work", "0599111111", true);
+        contactManager.addContact("Maya", "Work", "0599222222", true);
+        Contact contact = contactManager.searchByNumber("0599111111").get(0);
+        
+        List<String> numbers = contact.getPhoneNumbers();
+        assertEquals(2, contact.getPhoneNumberCount());
+        assertEquals(List.of("0599111111", "0599222222"), numbers);
+        
+        List<String> visited = new ArrayList<>();
+        contact.forEachPhoneNumber(visited::add);
+        assertEquals(numbers, visited);
+        
+        // Read-only, and a view taken before an edit keeps its numbers
+        boolean rejected = false;
+        try {
+            numbers.add("0599333333");
+        } catch (UnsupportedOperationException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+        assertTrue(contactManager.deleteByNumber("0599222222"));
+        assertEquals(1, contact.getPhoneNumberCount());
+        assertEquals(2, numbers.size());
+    }
+    
+    @Test
+    @DisplayName("Test Contact Generator - Seeded And Importable")
+    void testContactGenerator(@TempDir Path dataDirectory) throws Exception {
+        ContactGenerator generator = new ContactGenerator(7).withExtraNumbers(0.2).withDuplicates(0.05).withTypos(0.1);
+        List<ImportRecord> records = generator.records(2000).collect(Collectors.toList());
+        
+        // Same seed, same book
+        List<ImportRecord> again = new ContactGenerator(7).withExtraNumbers(0.2).withDuplicates(0.05).withTypos(0.1)
+            .records(2000).collect(Collectors.toList());
+        assertEquals(records.size(), again.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getName(), again.get(i).getName());
+            assertEquals(records.get(i).getPhoneNumber(), again.get(i).getPhoneNumber());
+        }
+        assertTrue(records.size() > 2000);
+        assertEquals(generator.name(0), records.get(0).getName());
+        
+        // Every row is valid, only the planted duplicates are rejected
+        ImportReport report = contactManager.importContacts(records.stream(), true);
+        assertFalse(report.getRejections().isEmpty());
+        for (ImportReport.Rejection rejection : report.getRejections()) {
+            assertEquals(OperationResult.Code.NUMBER_EXISTS, rejection.getCode());
+        }
+        assertEquals(records.size(),
+            report.getContactsAdded() + report.getNumbersMerged() + report.getRejections().size());
+        
+        // The CSV reads back row for row
+        Path file = dataDirectory.resolve("contacts.csv");
+        generator.writeCsv(file, 2000);
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            List<ImportRecord> read = ImportRecord.readCsv(reader).collect(Collectors.toList());
+            assertEquals(records.size(), read.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(records.get(i).getName(), read.get(i).getName());
+                assertEquals(records.get(i).getType(), read.get(i).getType());
+                assertEquals(records.get(i).getPhoneNumber(), read.get(i).getPhoneNumber());
+            }
+        }
+    }
+    
+    @Test
+    @DisplayName("Test Metrics - Calls Recorded Per Operation")
+    void testInstrumentedContactManager() {
+        ContactMetrics metrics = new ContactMetrics();
+        ContactManager manager = new InstrumentedContactManager(contactManager, metrics);
+        assertTrue(manager.addContact("Maya", "Work", "0599111111", false));
+        assertFalse(manager.addContact("Maya", "Work", "not a number", false));
+        assertEquals(1, manager.searchByName("Maya", false).size());
+        assertEquals(1, contactManager.searchByNumber("0599111111").size());
+        assertEquals(0, manager.searchByNumber("0599222222").size());
+        assertEquals(1, manager.getContactCount());
+        
+        assertEquals(2, metrics.getCalls(ContactMetrics.Operation.ADD));
+        assertEquals(1, metrics.getHits(ContactMetrics.Operation.ADD));
+        assertEquals(1, metrics.getCalls("searchByName"));
+        assertEquals(1, metrics.getCalls("searchByNumber"));
+        assertEquals(0, metrics.getHits("searchByNumber"));
+        assertTrue(metrics.getLatencyMicros("searchByName", 99) >= metrics.getLatencyMicros("searchByName", 50));
+        assertTrue(metrics.getReport().contains("searchByName"));
+        
+        // Disabled calls are passed through but not counted
+        metrics.setEnabled(false);
+        assertTrue(manager.deleteByNumber("0599111111"));
+        assertEquals(0, metrics.getCalls("deleteByNumber"));
+        assertEquals(0, contactManager.getContactCount());
+        
+        metrics.reset();
+        assertEquals(0, metrics.getCalls("searchByName"));
+    }
+    
+    @Test
+    @DisplayName("Test Slow Query Log - Calls Logged With Plan")
+    void testSlowQueryLog() throws Exception {
+        StringWriter out = new StringWriter();
+        SlowQueryLog slowQueries = new SlowQueryLog(out, Duration.ZERO);
+        ContactManager manager = new InstrumentedContactManager(contactManager, new ContactMetrics(false), slowQueries);
+        manager.addContact("Maya Haddad", "Work", "0599111111", false);
+        manager.addContact("Omar Haddad", "Family", "0599222222", false);
+        manager.searchByNumber("0599111111");
+        manager.search(ContactQuery.type(ContactType.FAMILY).and(ContactQuery.nameContains("haddad")));
+        manager.search(ContactQuery.type(ContactType.WORK).not());
+        slowQueries.close();
+        
+        List<String> lines = out.toString().lines().collect(Collectors.toList());
+        assertEquals(5, lines.size());
+        assertEquals(5, slowQueries.getLogged());
+        assertTrue(lines.get(0).contains(" tryAddContact "));
+        assertTrue(lines.get(0).contains("params=[\"Maya Haddad\", \"Work\", \"0599111111\", false]"));
+        assertTrue(lines.get(2).contains(" searchByNumber "));
+        assertTrue(lines.get(2).contains("examined=1 returned=1 plan=\"index number=0599111111\""));
+        assertTrue(lines.get(3).contains("returned=1 plan=\"index type=Family\""));
+        assertTrue(lines.get(4).contains("examined=2 returned=1 plan=\"scan\""));
+        
+        // Calls under the threshold are not even queued
+        slowQueries.setThreshold(Duration.ofHours(1));
+        manager.searchByNumber("0599111111");
+        assertEquals(0, slowQueries.getDropped());
+        
+        // Slow calls after close are counted as dropped
+        slowQueries.setThreshold(Duration.ZERO);
+        manager.searchByNumber("0599111111");
+        assertEquals(1, slowQueries.getDropped());
+        assertEquals(5, slowQueries.getLogged());
+    }
 }
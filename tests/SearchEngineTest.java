@@ -7,10 +7,24 @@ Testing search algorithms and fuzzy matching
 package com.ucas.addressbook.tests;
 
 import com.ucas.addressbook.Contact;
+import com.ucas.addressbook.ContactGenerator;
+import com.ucas.addressbook.ContactMetrics;
+import com.ucas.addressbook.ContactQuery;
+import com.ucas.addressbook.ContactType;
+import com.ucas.addressbook.InstrumentedSearchEngine;
 import com.ucas.addressbook.SearchEngine;
+import com.ucas.addressbook.SlowQueryLog;
+import com.ucas.addressbook.VariationDictionary;
 import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -319,4 +333,87 @@ class SearchEngineTest {
             .anyMatch(c -> c.getName().equals("Mohamed Ahmed"));
         assertTrue(foundExact, "Should find exact match");
     }
+    
+    @Test
+    @DisplayName("Test Variation Dictionary - Loaded From File")
+    void testVariationDictionaryLoaded() throws IOException {
+        VariationDictionary dictionary = new VariationDictionary();
+        dictionary.load(new StringReader("# canonical first\nsaleh, salih, صالح\n"));
+        assertEquals("saleh", dictionary.canonicalize("SALIH"));
+        assertNull(dictionary.canonicalize("John"));
+        
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact("Salih Omar", "Work", "1212121212"));
+        
+        SearchEngine engine = new SearchEngine(dictionary);
+        assertEquals(1, engine.searchByNameFuzzy(contacts, "صالح").size());
+    }
+    
+    @Test
+    @DisplayName("Test Search - Combined Query In One Pass")
+    void testSearchQuery() {
+        ContactQuery query = ContactQuery.type(ContactType.PERSONAL)
+            .and(ContactQuery.nameContains("mohamed").or(ContactQuery.nameContains("john")));
+        List<Contact> results = searchEngine.search(testContacts, query);
+        assertEquals(2, results.size());
+        assertEquals("Mohamed Ahmed", results.get(0).getName());
+        
+        results = searchEngine.search(testContacts, ContactQuery.type(ContactType.PERSONAL).not().limit(3));
+        assertEquals(3, results.size());
+        assertEquals("Mohammad Ahmad", results.get(0).getName());
+    }
+    
+    @Test
+    @DisplayName("Test Instrumented Search Engine")
+    void testInstrumentedSearchEngine() {
+        ContactMetrics metrics = new ContactMetrics();
+        SearchEngine engine = new InstrumentedSearchEngine(metrics);
+        assertEquals(searchEngine.searchByNameFuzzy(testContacts, "Mohamed"), engine.searchByNameFuzzy(testContacts, "Mohamed"));
+        engine.searchByNumberExact(testContacts, "1234567");
+        
+        assertEquals(1, metrics.getCalls("engine.searchByNameFuzzy"));
+        assertEquals(1, metrics.getCalls("engine.searchByNumberExact"));
+        assertEquals(0, metrics.getHits("engine.searchByNumberExact"));
+        assertTrue(metrics.getReport().contains("engine.searchByNameFuzzy"));
+    }
+    
+    @Test
+    @DisplayName("Test Parallel Scan Keeps Results And Order")
+    void testParallelScan() throws IOException {
+        List<Contact> contacts = new ContactGenerator(11).withTypos(0.1).contacts(30000).collect(Collectors.toList());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SearchEngine parallel = new SearchEngine(VariationDictionary.getDefault(), pool, 1000);
+            
+            assertEquals(searchEngine.searchByNameFuzzy(contacts, "Mohamed Saleh"), parallel.searchByNameFuzzy(contacts, "Mohamed Saleh"));
+            assertEquals(searchEngine.searchByNameContains(contacts, "has"), parallel.searchByNameContains(contacts, "has"));
+            assertEquals(searchEngine.searchByType(contacts, "Family"), parallel.searchByType(contacts, "Family"));
+            String number = contacts.get(12345).getPhoneNumbers().get(0);
+            assertEquals(List.of(contacts.get(12345)), parallel.searchByNumberExact(contacts, number));
+            
+            ContactQuery query = ContactQuery.type(ContactType.WORK).and(ContactQuery.nameContains("ali")).offset(5);
+            assertEquals(searchEngine.search(contacts, query), parallel.search(contacts, query));
+            assertEquals(searchEngine.search(contacts, query.limit(3)), parallel.search(contacts, query.limit(3)));
+            
+            // Lists without random access are scanned sequentially
+            List<Contact> linked = new LinkedList<>(contacts);
+            assertEquals(searchEngine.searchByType(contacts, "Work"), parallel.searchByType(linked, "Work"));
+            
+            // The slow query log names the path taken; a limited query is one
+            // pass that stops at its last result
+            StringWriter out = new StringWriter();
+            SlowQueryLog slowQueries = new SlowQueryLog(out, Duration.ZERO);
+            SearchEngine logged = new InstrumentedSearchEngine(VariationDictionary.getDefault(), pool, 1000,
+                new ContactMetrics(false), slowQueries);
+            logged.search(contacts, query);
+            List<Contact> page = logged.search(contacts, query.limit(3));
+            slowQueries.close();
+            List<String> lines = out.toString().lines().collect(Collectors.toList());
+            assertTrue(lines.get(0).contains("examined=30000 returned=" + searchEngine.search(contacts, query).size()
+                + " plan=\"parallel scan\""));
+            assertTrue(lines.get(1).contains("examined=" + (contacts.indexOf(page.get(2)) + 1) + " returned=3 plan=\"scan\""));
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -6,6 +6,8 @@ Testing input validation and sanitization
 
 package com.ucas.addressbook.tests;
 
+import com.ucas.addressbook.OperationResult;
+import com.ucas.addressbook.PhoneCheck;
 import com.ucas.addressbook.ValidationUtils;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -393,4 +395,21 @@ class ValidationUtilsTest {
             assertTrue(validator.isValidName(name));
         }
     }
+    
+    @Test
+    @DisplayName("Test Phone Check - Normalized Once")
+    void testCheckPhone() {
+        PhoneCheck formatted = validator.checkPhone("059-912-3456");
+        assertTrue(formatted.isValid());
+        assertEquals("0599123456", formatted.getDigits());
+        assertEquals("970599123456", formatted.getNormalized());
+        assertEquals(validator.validateAndCleanPhone("059-912-3456"), formatted.getNormalized());
+        
+        PhoneCheck reserved = validator.checkPhone("9-1-1");
+        assertFalse(reserved.isValid());
+        assertEquals(OperationResult.Code.PHONE_RESERVED, reserved.getResult().getCode());
+        assertEquals(OperationResult.Field.PHONE, reserved.getResult().getField());
+        
+        assertFalse(validator.checkPhone("   ").isValid());
+    }
 }